@@ -28,9 +28,9 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import com.customemoji.event.AfterEmojisLoaded;
-import com.customemoji.model.Emoji;
 import com.customemoji.model.Lifecycle;
 import com.customemoji.model.SpacingInfo;
+import com.customemoji.service.ChatIconPool;
 
 @Slf4j
 @Singleton
@@ -51,7 +51,8 @@ public class ChatSpacingManager implements Lifecycle
     @Inject
     private EventBus eventBus;
 
-    private Map<String, Emoji> emojis = new HashMap<>();
+    @Inject
+    private ChatIconPool chatIconPool;
     
     private final List<Rectangle> appliedChatboxYBounds = new ArrayList<>();
     private final List<Rectangle> appliedPmChatYBounds = new ArrayList<>();
@@ -69,7 +70,6 @@ public class ChatSpacingManager implements Lifecycle
     @Subscribe
     public void onAfterEmojisLoaded(AfterEmojisLoaded event)
     {
-        this.emojis = event.getEmojis();
         this.clearStoredPositions();
         this.applyChatSpacing();
     }
@@ -289,8 +289,7 @@ public class ChatSpacingManager implements Lifecycle
         Set<Integer> customEmojiIds = Collections.emptySet();
         if (dynamicSpacing)
         {
-           Map<Integer, Emoji> emojiLookup = PluginUtils.buildEmojiLookup(() -> this.emojis);
-           customEmojiIds = emojiLookup.keySet();
+           customEmojiIds = this.chatIconPool.getEmojisByImageId().keySet();
         }
 
         int maxAboveSpacing = 0;
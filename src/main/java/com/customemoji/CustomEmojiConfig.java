@@ -17,7 +17,10 @@ public interface CustomEmojiConfig extends Config
 	String KEY_CHAT_MESSAGE_SPACING = "chat_message_spacing";
 	String KEY_MESSAGE_PROCESS_LIMIT = "message_process_limit";
 	String KEY_MAX_IMAGE_HEIGHT = "max_image_height";
+	int MAX_IMAGE_HEIGHT_LIMIT = 100;
 	String KEY_ANIMATION_LOADING_MODE = "animation_loading_mode";
+	String KEY_ANIMATION_CACHE_SIZE = "animation_cache_size";
+	String KEY_OFF_HEAP_FRAMES = "off_heap_frames";
 	String KEY_FILTER_DISABLED_EMOJI_MESSAGES = "filter_disabled_emoji_messages";
 
 	// UI Components section
@@ -36,12 +39,20 @@ public interface CustomEmojiConfig extends Config
 	String KEY_SEASONAL_HALLOWEEN_ENABLED = "seasonal_halloween_enabled";
 	String KEY_SEASONAL_CHRISTMAS_ENABLED = "seasonal_christmas_enabled";
 
+	// Limits section
+	String KEY_MAX_CANVAS_MEGAPIXELS = "max_canvas_megapixels";
+	String KEY_MAX_ANIMATION_FRAMES = "max_animation_frames";
+	String KEY_MAX_DECODED_ANIMATION_SIZE = "max_decoded_animation_size";
+
 	// Experimental section
 	String KEY_NEW_EMOJI_LOADER = "new_emoji_loader";
 
 	// Hidden
 	String KEY_DISABLED_EMOJIS = "disabled_emojis";
 	String KEY_RESIZING_DISABLED_EMOJIS = "resizing_disabled_emojis";
+	String KEY_LAST_VISIBLE_ANIMATIONS = "last_visible_animations";
+
+	int DEFAULT_ANIMATION_CACHE_SIZE_MB = 64;
 
 	@ConfigSection(
 		name = "Display",
@@ -95,7 +106,7 @@ public interface CustomEmojiConfig extends Config
 		section = DISPLAY_SECTION,
 		position = 4
 	)
-	@Range(min = 0, max = 100)
+	@Range(min = 0, max = MAX_IMAGE_HEIGHT_LIMIT)
 	default int maxImageHeight()
 	{
 		return 24;
@@ -129,6 +140,31 @@ public interface CustomEmojiConfig extends Config
 		return DisabledEmojiFilterMode.OFF;
 	}
 
+	@ConfigItem(
+		keyName = KEY_ANIMATION_CACHE_SIZE,
+		name = "Animation Memory",
+		description = "Memory budget (in MB) for decoded animations. Animations that scrolled out of view stay cached until this fills up.",
+		section = DISPLAY_SECTION,
+		position = 6
+	)
+	@Range(min = 16, max = 512)
+	default int animationCacheSize()
+	{
+		return DEFAULT_ANIMATION_CACHE_SIZE_MB;
+	}
+
+	@ConfigItem(
+		keyName = KEY_OFF_HEAP_FRAMES,
+		name = "Off-heap Frames",
+		description = "Store decoded animation frames outside the Java heap. Can reduce garbage collection hitches with large emoji packs.",
+		section = DISPLAY_SECTION,
+		position = 7
+	)
+	default boolean offHeapFrames()
+	{
+		return false;
+	}
+
 	@ConfigSection(
 		name = "UI Components",
 		description = "Plugin panels, tooltips, and overlays",
@@ -259,6 +295,53 @@ public interface CustomEmojiConfig extends Config
 		return true;
 	}
 
+	@ConfigSection(
+		name = "Limits",
+		description = "Safety limits for oversized images. Emojis over a limit are shown as a static image.",
+		position = 5,
+		closedByDefault = true
+	)
+	String LIMITS_SECTION = "limitsSection";
+
+	@ConfigItem(
+		keyName = KEY_MAX_CANVAS_MEGAPIXELS,
+		name = "Max Image Area",
+		description = "Largest image area (in megapixels) that is decoded at full size. Larger images are downsampled while loading.",
+		section = LIMITS_SECTION,
+		position = 0
+	)
+	@Range(min = 1, max = 64)
+	default int maxCanvasMegapixels()
+	{
+		return 4;
+	}
+
+	@ConfigItem(
+		keyName = KEY_MAX_ANIMATION_FRAMES,
+		name = "Max Animation Frames",
+		description = "Animations with more frames than this are shown as a static image.",
+		section = LIMITS_SECTION,
+		position = 1
+	)
+	@Range(min = 2, max = 10000)
+	default int maxAnimationFrames()
+	{
+		return 1000;
+	}
+
+	@ConfigItem(
+		keyName = KEY_MAX_DECODED_ANIMATION_SIZE,
+		name = "Max Decoded Size",
+		description = "Largest total size (in MB) of all frames of an animation at full resolution. Larger animations are shown as a static image.",
+		section = LIMITS_SECTION,
+		position = 2
+	)
+	@Range(min = 16, max = 4096)
+	default int maxDecodedAnimationSize()
+	{
+		return 512;
+	}
+
 	/*@ConfigSection(
 		name = "Experimental",
 		description = "Experimental features (may be unstable)",
@@ -288,6 +371,17 @@ public interface CustomEmojiConfig extends Config
 		return "";
 	}
 
+	@ConfigItem(
+		keyName = KEY_LAST_VISIBLE_ANIMATIONS,
+		name = "",
+		description = "",
+		hidden = true
+	)
+	default String lastVisibleAnimations()
+	{
+		return "";
+	}
+
 	enum AnimationLoadingMode
 	{
 		OFF("Off"),
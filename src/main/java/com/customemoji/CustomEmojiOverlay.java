@@ -205,13 +205,14 @@ class CustomEmojiOverlay extends OverlayPanel implements Lifecycle
 
     private void addEmojiToOverlay(Emoji emoji, String searchTerm)
     {
-        BufferedImage displayImage = emoji.getStaticImage();
-        int displayWidth = displayImage.getWidth();
-        int displayHeight = displayImage.getHeight();
+        Dimension dimension = emoji.getDimension();
+        boolean isAnimated = emoji instanceof AnimatedEmoji;
+        BufferedImage displayImage = isAnimated ? null : emoji.getStaticImage();
 
-        if (emoji instanceof AnimatedEmoji)
+        // Animated emojis are drawn over this space afterwards
+        if (displayImage == null)
         {
-            displayImage = new BufferedImage(displayWidth, displayHeight, BufferedImage.TYPE_INT_ARGB);
+            displayImage = new BufferedImage(dimension.width, dimension.height, BufferedImage.TYPE_INT_ARGB);
         }
 
         ImageComponent imageComponent = new ImageComponent(displayImage);
@@ -343,7 +344,7 @@ class CustomEmojiOverlay extends OverlayPanel implements Lifecycle
         int i = 0;
         for (Emoji emoji : this.emojiSuggestions.values())
         {
-            int imageHeight = emoji.getStaticImage().getHeight();
+            int imageHeight = emoji.getDimension().height;
             int rowHeight = Math.max(imageHeight, MIN_ROW_HEIGHT);
 
             yPositions[i] = currentY;
@@ -371,8 +372,8 @@ class CustomEmojiOverlay extends OverlayPanel implements Lifecycle
             if (frame != null)
             {
                 int baseY = yPositions[animatedPosition.index];
-                int imageWidth = emoji.getStaticImage().getWidth();
-                int imageHeight = emoji.getStaticImage().getHeight();
+                int imageWidth = emoji.getDimension().width;
+                int imageHeight = emoji.getDimension().height;
                 int rowHeight = Math.max(imageHeight, MIN_ROW_HEIGHT);
                 int y = baseY + (rowHeight - imageHeight) / 2;
 
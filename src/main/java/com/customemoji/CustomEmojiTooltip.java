@@ -7,6 +7,7 @@ import javax.inject.Singleton;
 import com.customemoji.event.AfterEmojisLoaded;
 import com.customemoji.model.Emoji;
 import com.customemoji.model.Lifecycle;
+import com.customemoji.service.ChatIconPool;
 import com.customemoji.service.EmojiStateManager;
 import net.runelite.api.events.MenuOpened;
 import net.runelite.client.eventbus.Subscribe;
@@ -54,6 +55,9 @@ public class CustomEmojiTooltip extends Overlay implements Lifecycle
     @Inject
     private EmojiStateManager emojiStateManager;
 
+    @Inject
+    private ChatIconPool chatIconPool;
+
     private static final String MENU_OPTION_EMOJI = "Emoji";
 
     @Override
@@ -198,7 +202,7 @@ public class CustomEmojiTooltip extends Overlay implements Lifecycle
 
         for (EmojiPosition position : positions)
         {
-            Emoji emoji = PluginUtils.findEmojiByImageId(position.getImageId(), this.emojis);
+            Emoji emoji = this.chatIconPool.getEmojisByImageId().get(position.getImageId());
             boolean isZeroWidth = PluginUtils.isZeroWidthId(emoji, position.getImageId());
 
             if (isZeroWidth)
@@ -224,7 +228,7 @@ public class CustomEmojiTooltip extends Overlay implements Lifecycle
 
     private String findEmojiNameById(int imageId)
     {
-        Emoji emoji = PluginUtils.findEmojiByImageId(imageId, this.emojis);
+        Emoji emoji = this.chatIconPool.getEmojisByImageId().get(imageId);
         if (emoji != null)
         {
             return emoji.getText();
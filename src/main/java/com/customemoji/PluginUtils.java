@@ -1,5 +1,6 @@
 package com.customemoji;
 
+import com.customemoji.io.FileUtils;
 import com.customemoji.model.Emoji;
 
 import net.runelite.api.Client;
@@ -23,13 +24,11 @@ import javax.imageio.stream.ImageInputStream;
 
 import net.runelite.client.util.ImageUtil;
 import net.runelite.client.util.Text;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -171,35 +170,6 @@ public final class PluginUtils
 		return result;
 	}
 
-	public static Map<Integer, Emoji> buildEmojiLookup(Supplier<Map<String, Emoji>> emojisSupplier)
-	{
-		Map<Integer, Emoji> lookup = new HashMap<>();
-
-		if (emojisSupplier == null)
-		{
-			return lookup;
-		}
-
-		for (Emoji emoji : emojisSupplier.get().values())
-		{
-			int imageId = emoji.getIconId();
-			if (imageId < 0)
-			{
-				continue;
-			}
-
-			lookup.put(imageId, emoji);
-
-			int zeroWidthImageId = emoji.getZeroWidthIconId();
-			if (zeroWidthImageId >= 0)
-			{
-				lookup.put(zeroWidthImageId, emoji);
-			}
-		}
-
-		return lookup;
-	}
-
 	public static boolean hasImgTag(String text)
 	{
 		return text != null && text.contains("<img=");
@@ -238,25 +208,6 @@ public final class PluginUtils
 		}
 	}
 
-	public static Emoji findEmojiByImageId(int imageId, Map<String, Emoji> emojis)
-	{
-		for (Emoji emoji : emojis.values())
-		{
-			if (emoji.getIconId() == imageId)
-			{
-				return emoji;
-			}
-
-			int zeroWidthImageId = emoji.getZeroWidthIconId();
-			if (zeroWidthImageId >= 0 && zeroWidthImageId == imageId)
-			{
-				return emoji;
-			}
-		}
-
-		return null;
-	}
-
 	public static boolean getIsMouseInWidget(Client client, Widget widget)
 	{
 		net.runelite.api.Point mouseCanvasPosition = client.getMouseCanvasPosition();
@@ -379,9 +330,8 @@ public final class PluginUtils
 			ImageReader reader = readers.next();
 			try
 			{
-				reader.setInput(stream);
-				int frameCount = reader.getNumImages(true);
-				return frameCount > 1;
+				reader.setInput(stream, true);
+				return FileUtils.hasSecondImage(reader);
 			}
 			finally
 			{
@@ -0,0 +1,224 @@
+package com.customemoji.animation;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Two-tier, byte-budgeted store for animations. The hot tier holds decoded
+ * animations, the warm tier the encoded GIF bytes so a re-decode does not have
+ * to touch the disk. Both tiers evict least recently used entries first.
+ */
+@Slf4j
+class AnimationCache
+{
+	private static final int WARM_TIER_BUDGET_DIVISOR = 4;
+
+	private final Map<Integer, GifAnimation> hotTier = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<Integer, EncodedAnimation> warmTier = new LinkedHashMap<>(16, 0.75f, true);
+	private final IntConsumer evictionListener;
+
+	private long hotBudgetBytes;
+	private long warmBudgetBytes;
+	private long warmBytes;
+
+	private long hotHits;
+	private long warmHits;
+	private long misses;
+	private long evictions;
+
+	AnimationCache(long budgetBytes, IntConsumer evictionListener)
+	{
+		this.evictionListener = evictionListener;
+		this.setBudget(budgetBytes);
+	}
+
+	synchronized void setBudget(long budgetBytes)
+	{
+		this.warmBudgetBytes = budgetBytes / WARM_TIER_BUDGET_DIVISOR;
+		this.hotBudgetBytes = budgetBytes - this.warmBudgetBytes;
+		this.trimWarmTier();
+	}
+
+	synchronized GifAnimation getAnimation(int emojiId)
+	{
+		GifAnimation animation = this.hotTier.get(emojiId);
+		if (animation != null)
+		{
+			this.hotHits++;
+		}
+		return animation;
+	}
+
+	/**
+	 * Whether a decoded animation is held, without counting a hit or touching its recency.
+	 */
+	synchronized boolean containsAnimation(int emojiId)
+	{
+		return this.hotTier.containsKey(emojiId);
+	}
+
+	synchronized GifAnimation putAnimation(int emojiId, GifAnimation animation)
+	{
+		return this.hotTier.put(emojiId, animation);
+	}
+
+	synchronized GifAnimation removeAnimation(int emojiId)
+	{
+		return this.hotTier.remove(emojiId);
+	}
+
+	/**
+	 * Returns the cached GIF bytes when they still match the file on disk, counting a warm hit or a miss.
+	 */
+	synchronized byte[] getEncodedData(int emojiId, File file, long lastModified)
+	{
+		EncodedAnimation encoded = this.warmTier.get(emojiId);
+		boolean isCurrent = encoded != null && encoded.file.equals(file) && encoded.lastModified == lastModified;
+		if (!isCurrent)
+		{
+			this.misses++;
+			return null;
+		}
+
+		this.warmHits++;
+		return encoded.data;
+	}
+
+	synchronized void putEncodedData(int emojiId, File file, long lastModified, byte[] data)
+	{
+		EncodedAnimation previous = this.warmTier.put(emojiId, new EncodedAnimation(file, lastModified, data));
+		if (previous != null)
+		{
+			this.warmBytes -= previous.data.length;
+		}
+		this.warmBytes += data.length;
+		this.trimWarmTier();
+	}
+
+	/**
+	 * Closes least recently used animations until the hot tier fits its budget.
+	 * Animations matching {@code isProtected} are skipped, so the tier may stay over
+	 * budget when everything left is in use.
+	 */
+	void trim(IntPredicate isProtected)
+	{
+		Map<Integer, GifAnimation> evicted = new LinkedHashMap<>();
+
+		synchronized (this)
+		{
+			long hotBytes = this.calculateHotBytes();
+			Iterator<Map.Entry<Integer, GifAnimation>> iterator = this.hotTier.entrySet().iterator();
+
+			while (hotBytes > this.hotBudgetBytes && iterator.hasNext())
+			{
+				Map.Entry<Integer, GifAnimation> entry = iterator.next();
+				if (isProtected.test(entry.getKey()))
+				{
+					continue;
+				}
+
+				GifAnimation animation = entry.getValue();
+				hotBytes -= animation.getByteSize();
+				iterator.remove();
+				evicted.put(entry.getKey(), animation);
+				this.evictions++;
+				log.debug("Evicting animation for emoji id: {}", entry.getKey());
+			}
+		}
+
+		evicted.forEach((emojiId, animation) ->
+		{
+			this.evictionListener.accept(emojiId);
+			animation.close();
+		});
+	}
+
+	void clearAnimations()
+	{
+		List<GifAnimation> removed;
+		synchronized (this)
+		{
+			removed = new ArrayList<>(this.hotTier.values());
+			this.hotTier.clear();
+		}
+
+		removed.forEach(GifAnimation::close);
+	}
+
+	synchronized void clearEncodedData()
+	{
+		this.warmTier.clear();
+		this.warmBytes = 0;
+	}
+
+	synchronized void forEachAnimation(BiConsumer<Integer, GifAnimation> action)
+	{
+		this.hotTier.forEach(action);
+	}
+
+	synchronized Set<Integer> getHotIds()
+	{
+		return Set.copyOf(this.hotTier.keySet());
+	}
+
+	synchronized AnimationCacheStats getStats()
+	{
+		return new AnimationCacheStats(
+			this.hotHits,
+			this.warmHits,
+			this.misses,
+			this.evictions,
+			this.hotTier.size(),
+			this.calculateHotBytes(),
+			this.warmTier.size(),
+			this.warmBytes,
+			this.hotBudgetBytes + this.warmBudgetBytes
+		);
+	}
+
+	private long calculateHotBytes()
+	{
+		long total = 0;
+		for (GifAnimation animation : this.hotTier.values())
+		{
+			total += animation.getByteSize();
+		}
+		return total;
+	}
+
+	private void trimWarmTier()
+	{
+		Iterator<EncodedAnimation> iterator = this.warmTier.values().iterator();
+		while (this.warmBytes > this.warmBudgetBytes && iterator.hasNext())
+		{
+			EncodedAnimation encoded = iterator.next();
+			this.warmBytes -= encoded.data.length;
+			iterator.remove();
+			this.evictions++;
+		}
+	}
+
+	private static class EncodedAnimation
+	{
+		final File file;
+		final long lastModified;
+		final byte[] data;
+
+		EncodedAnimation(File file, long lastModified, byte[] data)
+		{
+			this.file = file;
+			this.lastModified = lastModified;
+			this.data = data;
+		}
+	}
+}
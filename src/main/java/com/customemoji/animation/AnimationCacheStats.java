@@ -0,0 +1,17 @@
+package com.customemoji.animation;
+
+import lombok.Value;
+
+@Value
+public class AnimationCacheStats
+{
+	long hotHits;
+	long warmHits;
+	long misses;
+	long evictions;
+	int hotCount;
+	long hotBytes;
+	int warmCount;
+	long warmBytes;
+	long budgetBytes;
+}
@@ -0,0 +1,219 @@
+package com.customemoji.animation;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Stores fully decoded animations as {@code <emoji>-<key>.frames} files so a restart
+ * can skip the GIF decoder. The key hashes the GIF bytes together with the resize,
+ * loading mode and decode limit settings, so any change to the source produces a new
+ * file and the old one is removed.
+ */
+@Slf4j
+class AnimationDiskCache
+{
+	private static final String FILE_EXTENSION = ".frames";
+	private static final int MAGIC = 0x43454643;
+	private static final int FORMAT_VERSION = 3;
+	private static final int HEADER_BYTES = 4 * Integer.BYTES;
+
+	private final File folder;
+
+	AnimationDiskCache(File folder)
+	{
+		this.folder = folder;
+	}
+
+	/**
+	 * Frames decoded under other limits or another loading mode never match, so a hit is always
+	 * what a fresh decode with the current settings would have produced.
+	 */
+	String createKey(byte[] gifData, int maxHeight, boolean shouldResize, boolean useLazyLoading, DecodeLimits limits)
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+
+		digest.update(gifData);
+		ByteBuffer settings = ByteBuffer.allocate(2 * Integer.BYTES + 2 + 2 * Long.BYTES)
+			.putInt(maxHeight)
+			.put((byte) (shouldResize ? 1 : 0))
+			.put((byte) (useLazyLoading ? 1 : 0))
+			.putLong(limits.getMaxCanvasPixels())
+			.putInt(limits.getMaxFrameCount())
+			.putLong(limits.getMaxDecodedBytes());
+		digest.update(settings.array());
+
+		StringBuilder key = new StringBuilder();
+		for (byte value : digest.digest())
+		{
+			key.append(Character.forDigit((value >> 4) & 0xF, 16));
+			key.append(Character.forDigit(value & 0xF, 16));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the cached frames, or null when there is no valid entry for this key.
+	 */
+	DecodedFrames read(String emojiName, String key)
+	{
+		Path path = this.fileFor(emojiName, key).toPath();
+		if (!Files.isRegularFile(path))
+		{
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			boolean isValidHeader = buffer.remaining() >= HEADER_BYTES && buffer.getInt() == MAGIC && buffer.getInt() == FORMAT_VERSION;
+			int playCount = isValidHeader ? buffer.getInt() : -1;
+			int frameCount = isValidHeader ? buffer.getInt() : 0;
+			if (frameCount <= 0 || playCount < 0)
+			{
+				throw new IllegalArgumentException("Invalid frame cache header");
+			}
+
+			List<IndexedFrame> frames = new ArrayList<>(frameCount);
+			for (int i = 0; i < frameCount; i++)
+			{
+				frames.add(IndexedFrame.deserialize(buffer));
+			}
+			return new DecodedFrames(frames, playCount);
+		}
+		catch (IOException | BufferUnderflowException | IllegalArgumentException e)
+		{
+			log.debug("Discarding unreadable frame cache for {}", emojiName, e);
+			this.delete(path);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the frames and removes any older entries for the same emoji.
+	 */
+	void write(String emojiName, String key, DecodedFrames decoded)
+	{
+		List<IndexedFrame> frames = decoded.getFrames();
+		int size = HEADER_BYTES;
+		for (IndexedFrame frame : frames)
+		{
+			size += frame.getSerializedSize();
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(MAGIC);
+		buffer.putInt(FORMAT_VERSION);
+		buffer.putInt(decoded.getPlayCount());
+		buffer.putInt(frames.size());
+		for (IndexedFrame frame : frames)
+		{
+			frame.serialize(buffer);
+		}
+		buffer.flip();
+
+		File target = this.fileFor(emojiName, key);
+		try
+		{
+			Files.createDirectories(this.folder.toPath());
+			Path temp = Files.createTempFile(this.folder.toPath(), "frames-", ".tmp");
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE))
+			{
+				while (buffer.hasRemaining())
+				{
+					channel.write(buffer);
+				}
+			}
+			Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			log.debug("Failed to write frame cache for {}", emojiName, e);
+			return;
+		}
+
+		this.deleteEntries(file ->
+		{
+			String name = file.getName();
+			return !name.equals(target.getName()) && emojiName.equals(AnimationDiskCache.emojiNameOf(name));
+		});
+	}
+
+	/**
+	 * Removes entries for emojis that no longer exist, along with leftover temp files.
+	 */
+	void prune(Set<String> emojiNames)
+	{
+		this.deleteEntries(file ->
+		{
+			String emojiName = AnimationDiskCache.emojiNameOf(file.getName());
+			return emojiName == null || !emojiNames.contains(emojiName);
+		});
+	}
+
+	private void deleteEntries(Predicate<File> shouldDelete)
+	{
+		File[] files = this.folder.listFiles();
+		if (files == null)
+		{
+			return;
+		}
+
+		for (File file : files)
+		{
+			if (file.isFile() && shouldDelete.test(file))
+			{
+				this.delete(file.toPath());
+			}
+		}
+	}
+
+	private void delete(Path path)
+	{
+		try
+		{
+			Files.deleteIfExists(path);
+		}
+		catch (IOException e)
+		{
+			// Still mapped on some platforms, it will be replaced or pruned next time
+			log.debug("Failed to delete frame cache file {}", path, e);
+		}
+	}
+
+	private File fileFor(String emojiName, String key)
+	{
+		return new File(this.folder, emojiName + "-" + key + FILE_EXTENSION);
+	}
+
+	private static String emojiNameOf(String fileName)
+	{
+		int separator = fileName.lastIndexOf('-');
+		boolean isCacheFile = fileName.endsWith(FILE_EXTENSION) && separator > 0;
+		return isCacheFile ? fileName.substring(0, separator) : null;
+	}
+}
@@ -0,0 +1,161 @@
+package com.customemoji.animation;
+
+import com.customemoji.CustomEmojiConfig;
+import com.customemoji.model.Lifecycle;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.api.events.BeforeRender;
+import net.runelite.client.eventbus.EventBus;
+import net.runelite.client.eventbus.Subscribe;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import java.awt.Canvas;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches how long emoji drawing takes each client frame and lowers animation quality
+ * when it gets expensive, for example in a crowded world with a busy chat. Quality is
+ * raised again one step at a time once there is headroom. Only used on the client thread.
+ */
+@Slf4j
+@Singleton
+public class AnimationGovernor implements Lifecycle
+{
+	private static final double SMOOTHING = 0.1;
+	private static final long DEGRADE_ABOVE_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+	private static final long RESTORE_BELOW_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long DEGRADE_HOLD_MS = 1000;
+	private static final long RESTORE_HOLD_MS = 5000;
+
+	public enum QualityLevel
+	{
+		FULL(0, 300, Integer.MAX_VALUE, false),
+		REDUCED(50, 100, 15, true),
+		MINIMAL(100, 30, 0, true);
+
+		private final long minAdvanceIntervalMs;
+		private final int maxAnimations;
+		private final int overheadAnimationDistance;
+		private final boolean freezeWhenUnfocused;
+
+		QualityLevel(long minAdvanceIntervalMs, int maxAnimations, int overheadAnimationDistance, boolean freezeWhenUnfocused)
+		{
+			this.minAdvanceIntervalMs = minAdvanceIntervalMs;
+			this.maxAnimations = maxAnimations;
+			this.overheadAnimationDistance = overheadAnimationDistance;
+			this.freezeWhenUnfocused = freezeWhenUnfocused;
+		}
+	}
+
+	@Inject
+	private Client client;
+
+	@Inject
+	private EventBus eventBus;
+
+	@Getter
+	private QualityLevel level = QualityLevel.FULL;
+
+	private long frameRenderNanos;
+	private double averageRenderNanos;
+	private long lastLevelChangeTime;
+	private long lastAdvanceTime;
+
+	@Override
+	public void startUp()
+	{
+		this.level = QualityLevel.FULL;
+		this.averageRenderNanos = 0;
+		this.frameRenderNanos = 0;
+		this.lastLevelChangeTime = System.currentTimeMillis();
+		this.eventBus.register(this);
+	}
+
+	@Override
+	public void shutDown()
+	{
+		this.eventBus.unregister(this);
+	}
+
+	@Override
+	public boolean isEnabled(CustomEmojiConfig config)
+	{
+		return true;
+	}
+
+	/**
+	 * Adds time spent drawing or advancing emojis to the current client frame.
+	 */
+	public void recordRenderTime(long nanos)
+	{
+		this.frameRenderNanos += nanos;
+	}
+
+	/**
+	 * Whether animations should move on this client frame. Lower levels cap the
+	 * animation frame rate and hold animations still while the client is unfocused.
+	 */
+	public boolean shouldAdvanceAnimations(long now)
+	{
+		boolean isFrozen = this.level.freezeWhenUnfocused && !this.isClientFocused();
+		if (isFrozen || now - this.lastAdvanceTime < this.level.minAdvanceIntervalMs)
+		{
+			return false;
+		}
+
+		this.lastAdvanceTime = now;
+		return true;
+	}
+
+	/**
+	 * Most animations a single renderer draws per frame, the rest show their static image.
+	 */
+	public int getMaxAnimations()
+	{
+		return this.level.maxAnimations;
+	}
+
+	/**
+	 * Whether overhead text this many tiles away from the local player may animate.
+	 */
+	public boolean isOverheadAnimated(int distance)
+	{
+		return distance <= this.level.overheadAnimationDistance;
+	}
+
+	@Subscribe
+	public void onBeforeRender(BeforeRender event)
+	{
+		this.averageRenderNanos += (this.frameRenderNanos - this.averageRenderNanos) * SMOOTHING;
+		this.frameRenderNanos = 0;
+
+		long now = System.currentTimeMillis();
+		long sinceLastChange = now - this.lastLevelChangeTime;
+		QualityLevel[] levels = QualityLevel.values();
+
+		boolean shouldDegrade = this.averageRenderNanos > DEGRADE_ABOVE_NANOS
+			&& sinceLastChange >= DEGRADE_HOLD_MS
+			&& this.level.ordinal() < levels.length - 1;
+		boolean shouldRestore = this.averageRenderNanos < RESTORE_BELOW_NANOS
+			&& sinceLastChange >= RESTORE_HOLD_MS
+			&& this.level.ordinal() > 0;
+
+		if (shouldDegrade || shouldRestore)
+		{
+			QualityLevel next = levels[this.level.ordinal() + (shouldDegrade ? 1 : -1)];
+			log.debug("Animation quality {} -> {} (emoji render time {} us)", this.level, next, TimeUnit.NANOSECONDS.toMicros((long) this.averageRenderNanos));
+			this.level = next;
+			this.lastLevelChangeTime = now;
+		}
+	}
+
+	private boolean isClientFocused()
+	{
+		Canvas canvas = this.client.getCanvas();
+		return canvas == null || canvas.isFocusOwner();
+	}
+}
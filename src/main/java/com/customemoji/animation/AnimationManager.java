@@ -5,12 +5,16 @@ import com.customemoji.CustomEmojiConfig.AnimationLoadingMode;
 import com.customemoji.event.AfterEmojisLoaded;
 import com.customemoji.event.BeforeEmojisLoaded;
 import com.customemoji.event.EmojiStateChanged;
+import com.customemoji.event.EmojisChanged;
+import com.customemoji.io.EmojiLoader;
 import com.customemoji.model.AnimatedEmoji;
 import com.customemoji.model.Emoji;
 import com.customemoji.model.Lifecycle;
 import com.customemoji.service.EmojiStateManager;
+import com.customemoji.service.EmojiUsageRecorder;
 
 import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.events.BeforeRender;
 import net.runelite.client.eventbus.EventBus;
 import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.events.ConfigChanged;
@@ -18,27 +22,45 @@ import net.runelite.client.events.ConfigChanged;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Singleton
 public class AnimationManager implements Lifecycle
 {
-	private static final long STALE_ANIMATION_TIMEOUT_MS = 500;
-	private static final int FRAME_LOADER_THREAD_COUNT = 2;
-
-	private final Map<Integer, GifAnimation> animationCache = new ConcurrentHashMap<>();
+	private static final long RECENTLY_SEEN_PROTECTION_MS = 500;
+	private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+	private static final long SLOW_ADVANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+	private static final int PINNED_ANIMATION_COUNT = 8;
+	private static final int STARTUP_PREWARM_COUNT = 32;
+	private static final int SAVED_VISIBLE_ANIMATION_COUNT = 16;
+	private static final int MAX_DECODE_THREADS = 4;
+	private static final File FRAME_CACHE_FOLDER = new File(EmojiLoader.EMOJIS_FOLDER, ".cache/frames");
+
+	private final FrameLoadScheduler loadScheduler = new FrameLoadScheduler();
+	private final AnimationCache animationCache = new AnimationCache(CustomEmojiConfig.DEFAULT_ANIMATION_CACHE_SIZE_MB * BYTES_PER_MEGABYTE, this.loadScheduler::cancel);
 	private final Map<Integer, Long> animationLastSeenTime = new ConcurrentHashMap<>();
 	private final Set<Integer> pendingAnimationLoads = ConcurrentHashMap.newKeySet();
+	private final Set<Integer> queuedPrewarms = ConcurrentHashMap.newKeySet();
+	private final Set<Integer> demotedAnimations = ConcurrentHashMap.newKeySet();
+	private final Set<Integer> pinnedAnimations = ConcurrentHashMap.newKeySet();
+	private final AnimationDiskCache diskCache = new AnimationDiskCache(FRAME_CACHE_FOLDER);
+	private final OffHeapFramePool offHeapPool = new OffHeapFramePool();
 
 	@Inject
 	private CustomEmojiConfig config;
@@ -49,25 +71,43 @@ public class AnimationManager implements Lifecycle
 	@Inject
 	private EventBus eventBus;
 
+	@Inject
+	private EmojiLoader emojiLoader;
+
+	@Inject
+	private AnimationGovernor governor;
+
+	@Inject
+	private EmojiUsageRecorder usageRecorder;
+
 	private Map<String, Emoji> emojis = new HashMap<>();
-	private ExecutorService frameLoaderPool;
+	private Map<Integer, String> emojiNamesById = new HashMap<>();
+	private ForkJoinPool decodePool;
 
 	@Override
 	public void startUp()
 	{
 		this.eventBus.register(this);
-		if (this.frameLoaderPool == null || this.frameLoaderPool.isShutdown())
+		this.animationCache.setBudget(this.config.animationCacheSize() * BYTES_PER_MEGABYTE);
+		this.loadScheduler.start();
+		if (this.decodePool == null || this.decodePool.isShutdown())
 		{
-			this.frameLoaderPool = Executors.newFixedThreadPool(FRAME_LOADER_THREAD_COUNT, this::createLoaderThread);
+			// Leaves a core to the client so frame decoding never competes with rendering
+			int decodeThreads = Math.max(1, Math.min(MAX_DECODE_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+			this.decodePool = new ForkJoinPool(decodeThreads, this::createDecoderThread, null, false);
 		}
 	}
 
 	@Override
 	public void shutDown()
 	{
+		this.saveVisibleAnimations();
 		this.clearAllAnimations();
+		this.animationCache.clearEncodedData();
 		this.eventBus.unregister(this);
-		this.frameLoaderPool.shutdownNow();
+		this.loadScheduler.shutDown();
+		this.decodePool.shutdownNow();
+		this.offHeapPool.clear();
 	}
 
 	@Override
@@ -80,124 +120,195 @@ public class AnimationManager implements Lifecycle
 	{
 		int emojiId = emoji.getIndex();
 
-		GifAnimation cached = this.animationCache.get(emojiId);
+		boolean isDemoted = this.demotedAnimations.contains(emojiId);
+		if (isDemoted)
+		{
+			return null;
+		}
+
+		GifAnimation cached = this.animationCache.getAnimation(emojiId);
 		if (cached != null)
 		{
-			this.startBackgroundLoadingIfNeeded(cached);
-			this.startPreloadingIfNeeded(cached);
+			this.startBackgroundLoadingIfNeeded(emoji, cached);
+			this.startPreloadingIfNeeded(emoji, cached);
 			return cached;
 		}
 
 		synchronized (this.pendingAnimationLoads)
 		{
-			cached = this.animationCache.get(emojiId);
+			cached = this.animationCache.getAnimation(emojiId);
 			if (cached != null)
 			{
-				this.startBackgroundLoadingIfNeeded(cached);
-				this.startPreloadingIfNeeded(cached);
+				this.startBackgroundLoadingIfNeeded(emoji, cached);
+				this.startPreloadingIfNeeded(emoji, cached);
 				return cached;
 			}
 
 			boolean isAlreadyLoading = this.pendingAnimationLoads.contains(emojiId);
-			if (isAlreadyLoading)
+			boolean isQueuedPrewarm = isAlreadyLoading && this.queuedPrewarms.remove(emojiId);
+			if (isAlreadyLoading && !isQueuedPrewarm)
 			{
 				return null;
 			}
 
-			this.pendingAnimationLoads.add(emojiId);
-		}
-
-		String emojiText = emoji.getText();
-
-		this.frameLoaderPool.submit(() ->
-		{
-			try
+			if (isQueuedPrewarm)
 			{
-				GifAnimation animation = this.loadAnimation(emoji);
-				if (animation != null)
-				{
-					GifAnimation replaced = this.animationCache.put(emojiId, animation);
-					if (replaced != null)
-					{
-						replaced.close();
-					}
-					log.debug("Loaded animation: {} (id={})", emojiText, emojiId);
-					this.startBackgroundLoadingIfNeeded(animation);
-				}
+				// Now visible, so the hint should not wait behind other prewarms
+				this.loadScheduler.cancel(emojiId);
 			}
-			finally
+			else
 			{
-				this.pendingAnimationLoads.remove(emojiId);
+				this.pendingAnimationLoads.add(emojiId);
 			}
-		});
+		}
+
+		boolean isScheduled = this.loadScheduler.schedule(emojiId, FrameLoadScheduler.Priority.VISIBLE_FIRST_FRAME, () -> this.loadIntoCache(emoji, true));
+		if (!isScheduled)
+		{
+			this.pendingAnimationLoads.remove(emojiId);
+		}
 
 		return null;
 	}
 
+	/**
+	 * Decodes the first frame of an emoji that is about to be shown, such as one in a
+	 * newly received message, so it can animate as soon as it is drawn. Runs behind
+	 * every load for emojis that are already visible.
+	 */
+	public void prewarmAnimation(AnimatedEmoji emoji)
+	{
+		this.prewarmAnimation(emoji, FrameLoadScheduler.Priority.PREWARM);
+	}
+
+	/**
+	 * Whether the emoji has a decoded animation ready to draw.
+	 */
+	public boolean isAnimationReady(int emojiId)
+	{
+		return this.animationCache.containsAnimation(emojiId);
+	}
+
 	public void markAnimationVisible(int emojiId)
 	{
 		this.animationLastSeenTime.put(emojiId, System.currentTimeMillis());
 	}
 
-	public void unloadStaleAnimations(Set<Integer> currentlyVisibleIds)
+	/**
+	 * Evicts least recently used animations until the cache fits its memory budget.
+	 * Animations that are visible, were drawn within the last few frames or are pinned
+	 * as the most used are kept.
+	 */
+	public void trimAnimations(Set<Integer> currentlyVisibleIds)
 	{
 		long currentTime = System.currentTimeMillis();
 
-		this.animationCache.entrySet().removeIf(entry ->
+		this.animationCache.trim(emojiId ->
 		{
-			int emojiId = entry.getKey();
 			boolean isCurrentlyVisible = currentlyVisibleIds.contains(emojiId);
-			if (isCurrentlyVisible)
-			{
-				return false;
-			}
-
-			Long lastSeen = this.animationLastSeenTime.get(emojiId);
-			if (lastSeen == null)
+			if (isCurrentlyVisible || this.pinnedAnimations.contains(emojiId))
 			{
-				entry.getValue().close();
 				return true;
 			}
 
-			boolean isStale = (currentTime - lastSeen) > STALE_ANIMATION_TIMEOUT_MS;
-			if (isStale)
-			{
-				this.animationLastSeenTime.remove(emojiId);
-				entry.getValue().close();
-				log.debug("Unloading stale animation for emoji id: {}", emojiId);
-			}
-			return isStale;
+			Long lastSeen = this.animationLastSeenTime.get(emojiId);
+			return lastSeen != null && (currentTime - lastSeen) <= RECENTLY_SEEN_PROTECTION_MS;
 		});
 	}
 
 	public void clearAllAnimations()
 	{
-		this.animationCache.values().forEach(GifAnimation::close);
-		this.animationCache.clear();
+		this.loadScheduler.cancelAll();
+		this.pendingAnimationLoads.clear();
+		this.queuedPrewarms.clear();
+		this.animationCache.clearAnimations();
 		this.animationLastSeenTime.clear();
 	}
 
 	public void invalidateAnimation(int emojiId)
 	{
-		GifAnimation animation = this.animationCache.remove(emojiId);
+		GifAnimation animation = this.animationCache.removeAnimation(emojiId);
 		if (animation != null)
 		{
 			animation.close();
 		}
+		this.loadScheduler.cancel(emojiId);
 		this.animationLastSeenTime.remove(emojiId);
 		this.pendingAnimationLoads.remove(emojiId);
+		this.queuedPrewarms.remove(emojiId);
+	}
+
+	public AnimationCacheStats getCacheStats()
+	{
+		return this.animationCache.getStats();
+	}
+
+	public List<FrameLoadQueueStats> getLoadQueueStats()
+	{
+		return this.loadScheduler.getStats();
+	}
+
+	/**
+	 * Bytes of frame pixels currently stored outside the Java heap.
+	 */
+	public long getOffHeapBytes()
+	{
+		return this.offHeapPool.getAllocatedBytes();
+	}
+
+	@Subscribe
+	public void onBeforeRender(BeforeRender event)
+	{
+		long now = System.currentTimeMillis();
+		if (!this.governor.shouldAdvanceAnimations(now))
+		{
+			return;
+		}
+
+		long startNanos = System.nanoTime();
+
+		this.animationCache.forEachAnimation((emojiId, animation) ->
+		{
+			Long lastSeen = this.animationLastSeenTime.get(emojiId);
+			boolean isRecentlySeen = lastSeen != null && (now - lastSeen) <= RECENTLY_SEEN_PROTECTION_MS;
+			if (isRecentlySeen)
+			{
+				animation.advance(now);
+			}
+		});
+
+		long elapsedNanos = System.nanoTime() - startNanos;
+		this.governor.recordRenderTime(elapsedNanos);
+		boolean isSlowAdvance = elapsedNanos > SLOW_ADVANCE_NANOS;
+		if (isSlowAdvance)
+		{
+			log.debug("Advancing animations stalled the client thread for {} us", TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+		}
 	}
 
 	@Subscribe
 	public void onAfterEmojisLoaded(AfterEmojisLoaded event)
 	{
 		this.emojis = event.getEmojis();
+		this.emojiNamesById = this.emojis.values().stream().collect(Collectors.toMap(Emoji::getIndex, Emoji::getText, (first, second) -> first));
+
+		Set<String> emojiNames = new HashSet<>(this.emojis.keySet());
+		this.loadScheduler.schedule(FrameLoadScheduler.NO_EMOJI_ID, FrameLoadScheduler.Priority.BACKGROUND, () -> this.diskCache.prune(emojiNames));
+		this.prewarmFrequentAnimations();
 	}
 
 	@Subscribe
 	public void onBeforeEmojisLoaded(BeforeEmojisLoaded event)
 	{
 		this.clearAllAnimations();
+		this.demotedAnimations.clear();
+	}
+
+	@Subscribe
+	public void onEmojisChanged(EmojisChanged event)
+	{
+		this.invalidateAnimations(event.getReplacedEmojis().values());
+		this.invalidateAnimations(event.getRemovedEmojis().values());
 	}
 
 	@Subscribe
@@ -214,7 +325,18 @@ public class AnimationManager implements Lifecycle
 			case CustomEmojiConfig.KEY_RESIZING_DISABLED_EMOJIS:
 			case CustomEmojiConfig.KEY_MESSAGE_PROCESS_LIMIT:
 			case CustomEmojiConfig.KEY_ANIMATION_LOADING_MODE:
+			case CustomEmojiConfig.KEY_MAX_CANVAS_MEGAPIXELS:
+			case CustomEmojiConfig.KEY_MAX_ANIMATION_FRAMES:
+			case CustomEmojiConfig.KEY_MAX_DECODED_ANIMATION_SIZE:
+				this.clearAllAnimations();
+				break;
+			case CustomEmojiConfig.KEY_OFF_HEAP_FRAMES:
 				this.clearAllAnimations();
+				this.offHeapPool.clear();
+				break;
+			case CustomEmojiConfig.KEY_ANIMATION_CACHE_SIZE:
+				this.animationCache.setBudget(this.config.animationCacheSize() * BYTES_PER_MEGABYTE);
+				this.trimAnimations(Set.of());
 				break;
 			default:
 				break;
@@ -236,27 +358,189 @@ public class AnimationManager implements Lifecycle
 		}
 	}
 
-	private Thread createLoaderThread(Runnable runnable)
+	/**
+	 * Decodes first frames for the animations most likely to be needed. The first few are
+	 * pinned in the cache and queued ahead of the rest, which decode in the background.
+	 */
+	private void prewarmFrequentAnimations()
 	{
-		Thread thread = new Thread(runnable);
-		thread.setName("CustomEmoji-FrameLoader");
-		thread.setDaemon(true);
+		this.pinnedAnimations.clear();
+		int prewarmedCount = 0;
+
+		for (String emojiName : this.usageRecorder.getPrewarmOrder())
+		{
+			Emoji emoji = this.emojis.get(emojiName);
+			if (!(emoji instanceof AnimatedEmoji))
+			{
+				continue;
+			}
+
+			boolean isPinned = prewarmedCount < PINNED_ANIMATION_COUNT;
+			if (isPinned)
+			{
+				this.pinnedAnimations.add(emoji.getIndex());
+			}
+
+			FrameLoadScheduler.Priority priority = isPinned ? FrameLoadScheduler.Priority.PREWARM : FrameLoadScheduler.Priority.BACKGROUND;
+			this.prewarmAnimation((AnimatedEmoji) emoji, priority);
+
+			prewarmedCount++;
+			if (prewarmedCount >= STARTUP_PREWARM_COUNT)
+			{
+				break;
+			}
+		}
+	}
+
+	private void prewarmAnimation(AnimatedEmoji emoji, FrameLoadScheduler.Priority priority)
+	{
+		int emojiId = emoji.getIndex();
+		boolean animationsEnabled = this.config.animationLoadingMode() != AnimationLoadingMode.OFF;
+		boolean isNeeded = animationsEnabled && !this.demotedAnimations.contains(emojiId) && !this.animationCache.containsAnimation(emojiId);
+		if (!isNeeded)
+		{
+			return;
+		}
+
+		synchronized (this.pendingAnimationLoads)
+		{
+			if (!this.pendingAnimationLoads.add(emojiId))
+			{
+				return;
+			}
+			this.queuedPrewarms.add(emojiId);
+		}
+
+		boolean isScheduled = this.loadScheduler.schedule(emojiId, priority, () ->
+		{
+			// Skipped when a visible load took over
+			if (this.queuedPrewarms.remove(emojiId))
+			{
+				this.loadIntoCache(emoji, false);
+			}
+		});
+
+		if (!isScheduled)
+		{
+			this.queuedPrewarms.remove(emojiId);
+			this.pendingAnimationLoads.remove(emojiId);
+		}
+	}
+
+	private void saveVisibleAnimations()
+	{
+		List<Map.Entry<Integer, Long>> lastSeen = new ArrayList<>(this.animationLastSeenTime.entrySet());
+		if (lastSeen.isEmpty())
+		{
+			// Nothing was drawn this session, keep what the previous one saved
+			return;
+		}
+
+		lastSeen.sort(Map.Entry.<Integer, Long>comparingByValue(Comparator.reverseOrder()));
+		List<String> emojiNames = new ArrayList<>();
+		for (Map.Entry<Integer, Long> entry : lastSeen)
+		{
+			String emojiName = this.emojiNamesById.get(entry.getKey());
+			if (emojiName != null)
+			{
+				emojiNames.add(emojiName);
+			}
+
+			if (emojiNames.size() >= SAVED_VISIBLE_ANIMATION_COUNT)
+			{
+				break;
+			}
+		}
+
+		this.usageRecorder.recordVisibleAnimations(emojiNames);
+	}
+
+	private void invalidateAnimations(Collection<Emoji> emojis)
+	{
+		for (Emoji emoji : emojis)
+		{
+			this.invalidateAnimation(emoji.getIndex());
+			this.demotedAnimations.remove(emoji.getIndex());
+		}
+	}
+
+	private ForkJoinWorkerThread createDecoderThread(ForkJoinPool pool)
+	{
+		ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+		thread.setName("CustomEmoji-FrameDecoder-" + thread.getPoolIndex());
+		// Plugin classes are not visible through the default context class loader of pool threads
+		thread.setContextClassLoader(AnimationManager.class.getClassLoader());
 		return thread;
 	}
 
-	private void startBackgroundLoadingIfNeeded(GifAnimation animation)
+	private void startBackgroundLoadingIfNeeded(AnimatedEmoji emoji, GifAnimation animation)
 	{
 		if (animation.needsBackgroundLoading())
 		{
-			this.frameLoaderPool.submit(animation::loadAllFrames);
+			this.loadScheduler.schedule(emoji.getIndex(), FrameLoadScheduler.Priority.BACKGROUND, () ->
+			{
+				animation.loadAllFrames(this.decodePool);
+				this.demoteIfOverLimit(emoji, animation);
+			});
 		}
 	}
 
-	private void startPreloadingIfNeeded(GifAnimation animation)
+	private void startPreloadingIfNeeded(AnimatedEmoji emoji, GifAnimation animation)
 	{
 		if (animation.needsPreloading())
 		{
-			this.frameLoaderPool.submit(animation::preloadFrames);
+			this.loadScheduler.schedule(emoji.getIndex(), FrameLoadScheduler.Priority.PRELOAD, () ->
+			{
+				animation.preloadFrames();
+				this.demoteIfOverLimit(emoji, animation);
+			});
+		}
+	}
+
+	/**
+	 * Falls back to the static image for an animation that hit a decode limit and reports it through the error command.
+	 */
+	private void demoteIfOverLimit(AnimatedEmoji emoji, GifAnimation animation)
+	{
+		String violation = animation.getLimitViolation();
+		if (violation == null || !this.demotedAnimations.add(emoji.getIndex()))
+		{
+			return;
+		}
+
+		this.invalidateAnimation(emoji.getIndex());
+		this.emojiLoader.recordError("Showing emoji " + emoji.getText() + " as a static image: " + violation);
+	}
+
+	private void loadIntoCache(AnimatedEmoji emoji, boolean isVisible)
+	{
+		int emojiId = emoji.getIndex();
+		try
+		{
+			GifAnimation animation = this.loadAnimation(emoji);
+			boolean isStillWanted = this.pendingAnimationLoads.contains(emojiId);
+			if (animation != null && !isStillWanted)
+			{
+				// Invalidated while decoding
+				animation.close();
+			}
+			else if (animation != null)
+			{
+				GifAnimation replaced = this.animationCache.putAnimation(emojiId, animation);
+				if (replaced != null)
+				{
+					replaced.close();
+				}
+				log.debug("Loaded animation: {} (id={}, visible={})", emoji.getText(), emojiId, isVisible);
+				if (isVisible)
+				{
+					this.startBackgroundLoadingIfNeeded(emoji, animation);
+				}
+			}
+		}
+		finally
+		{
+			this.pendingAnimationLoads.remove(emojiId);
 		}
 	}
 
@@ -267,18 +551,31 @@ public class AnimationManager implements Lifecycle
 
 		try
 		{
-			byte[] gifData = Files.readAllBytes(file.toPath());
+			byte[] gifData = this.readGifData(emoji.getIndex(), file);
 
 			int maxHeight = this.config.maxImageHeight();
 			boolean shouldResize = this.emojiStateManager.isResizingEnabled(emojiName);
 			boolean useLazyLoading = this.config.animationLoadingMode() == AnimationLoadingMode.LAZY;
+			DecodeLimits limits = DecodeLimits.fromConfig(this.config);
+			OffHeapFramePool framePool = this.config.offHeapFrames() ? this.offHeapPool : null;
+
+			String cacheKey = this.diskCache.createKey(gifData, maxHeight, shouldResize, useLazyLoading, limits);
+			DecodedFrames cachedFrames = this.diskCache.read(emojiName, cacheKey);
+			if (cachedFrames != null)
+			{
+				return GifAnimation.fromFrames(cachedFrames, framePool);
+			}
 
 			GifAnimation animation = new GifAnimation(gifData, maxHeight, shouldResize, useLazyLoading);
+			animation.setDecodeCompleteListener(decoded -> this.diskCache.write(emojiName, cacheKey, decoded));
+			animation.setDecodeLimits(limits);
+			animation.setOffHeapPool(framePool);
 
-			BufferedImage firstFrame = animation.getCurrentFrame();
-			if (firstFrame == null)
+			boolean initialized = animation.initialize();
+			if (!initialized)
 			{
 				animation.close();
+				this.demoteIfOverLimit(emoji, animation);
 				return null;
 			}
 
@@ -290,4 +587,16 @@ public class AnimationManager implements Lifecycle
 			return null;
 		}
 	}
+
+	private byte[] readGifData(int emojiId, File file) throws IOException
+	{
+		long lastModified = file.lastModified();
+		byte[] gifData = this.animationCache.getEncodedData(emojiId, file, lastModified);
+		if (gifData == null)
+		{
+			gifData = Files.readAllBytes(file.toPath());
+			this.animationCache.putEncodedData(emojiId, file, lastModified, gifData);
+		}
+		return gifData;
+	}
 }
@@ -0,0 +1,77 @@
+package com.customemoji.animation;
+
+import com.customemoji.CustomEmojiConfig;
+
+import lombok.Value;
+
+/**
+ * Upper bounds on how much work a single emoji image may cause. Checked against
+ * image headers before anything is decoded, so oversized files never allocate
+ * their full canvas.
+ */
+@Value
+public class DecodeLimits
+{
+	public static final DecodeLimits UNLIMITED = new DecodeLimits(Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+	private static final long PIXELS_PER_MEGAPIXEL = 1_000_000L;
+	private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+	private static final long MAX_DECODE_MILLIS = 5000;
+
+	long maxCanvasPixels;
+	int maxFrameCount;
+	long maxDecodedBytes;
+	long maxDecodeMillis;
+
+	public static DecodeLimits fromConfig(CustomEmojiConfig config)
+	{
+		return new DecodeLimits(
+			config.maxCanvasMegapixels() * PIXELS_PER_MEGAPIXEL,
+			config.maxAnimationFrames(),
+			config.maxDecodedAnimationSize() * BYTES_PER_MEGABYTE,
+			MAX_DECODE_MILLIS
+		);
+	}
+
+	/**
+	 * Returns why an animation of this size may not be decoded, or null when it is within every limit.
+	 */
+	public String checkAnimation(int width, int height, int frameCount)
+	{
+		String canvasViolation = this.checkCanvas(width, height);
+		if (canvasViolation != null)
+		{
+			return canvasViolation;
+		}
+
+		long canvasPixels = (long) width * height;
+
+		if (frameCount > this.maxFrameCount)
+		{
+			return String.format("%d frames is over the %d frame limit", frameCount, this.maxFrameCount);
+		}
+
+		long decodedBytes = canvasPixels * Integer.BYTES * frameCount;
+		if (decodedBytes > this.maxDecodedBytes)
+		{
+			return String.format("%d MB of decoded frames is over the %d MB limit", decodedBytes / BYTES_PER_MEGABYTE, this.maxDecodedBytes / BYTES_PER_MEGABYTE);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns why an image canvas of this size may not be decoded in full, or null when it is small enough.
+	 * Frame counts are checked once an animation is scanned, since counting them here would read the whole file.
+	 */
+	public String checkCanvas(int width, int height)
+	{
+		long canvasPixels = (long) width * height;
+		if (canvasPixels > this.maxCanvasPixels)
+		{
+			return String.format("canvas of %dx%d pixels is over the %d megapixel limit", width, height, this.maxCanvasPixels / PIXELS_PER_MEGAPIXEL);
+		}
+
+		return null;
+	}
+}
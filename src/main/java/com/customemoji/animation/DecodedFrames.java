@@ -0,0 +1,15 @@
+package com.customemoji.animation;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Every frame of a fully decoded animation together with how often it plays.
+ */
+@Value
+class DecodedFrames
+{
+	List<IndexedFrame> frames;
+	int playCount;
+}
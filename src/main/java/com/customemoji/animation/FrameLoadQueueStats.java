@@ -0,0 +1,13 @@
+package com.customemoji.animation;
+
+import lombok.Value;
+
+@Value
+public class FrameLoadQueueStats
+{
+	String priority;
+	int queued;
+	long started;
+	long averageWaitMs;
+	long maxWaitMs;
+}
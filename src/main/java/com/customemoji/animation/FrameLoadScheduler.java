@@ -0,0 +1,251 @@
+package com.customemoji.animation;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs animation decode work on a small pool, always picking the most urgent
+ * queued task first. Within a priority tasks run in submission order.
+ */
+@Slf4j
+class FrameLoadScheduler
+{
+	static final int NO_EMOJI_ID = -1;
+
+	private static final int MAX_THREAD_COUNT = 4;
+	private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+
+	enum Priority
+	{
+		VISIBLE_FIRST_FRAME,
+		PRELOAD,
+		PREWARM,
+		BACKGROUND
+	}
+
+	private final AtomicLong sequence = new AtomicLong();
+	private final Set<Long> queuedKeys = ConcurrentHashMap.newKeySet();
+	private final PriorityCounters[] counters = new PriorityCounters[Priority.values().length];
+
+	private volatile ThreadPoolExecutor executor;
+
+	FrameLoadScheduler()
+	{
+		for (Priority priority : Priority.values())
+		{
+			this.counters[priority.ordinal()] = new PriorityCounters();
+		}
+	}
+
+	synchronized void start()
+	{
+		if (this.executor != null && !this.executor.isShutdown())
+		{
+			return;
+		}
+
+		int threadCount = Math.max(1, Math.min(MAX_THREAD_COUNT, Runtime.getRuntime().availableProcessors() - 1));
+		this.executor = new ThreadPoolExecutor(
+			threadCount,
+			threadCount,
+			IDLE_THREAD_TIMEOUT_SECONDS,
+			TimeUnit.SECONDS,
+			new PriorityBlockingQueue<>(),
+			this::createLoaderThread
+		);
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	synchronized void shutDown()
+	{
+		if (this.executor != null)
+		{
+			this.executor.shutdownNow();
+			this.executor = null;
+		}
+		this.queuedKeys.clear();
+		for (PriorityCounters counter : this.counters)
+		{
+			counter.queued.set(0);
+		}
+	}
+
+	/**
+	 * Queues work for an emoji. Returns false when the same kind of work is already
+	 * queued for that emoji or the scheduler is not running.
+	 */
+	boolean schedule(int emojiId, Priority priority, Runnable work)
+	{
+		ThreadPoolExecutor currentExecutor = this.executor;
+		if (currentExecutor == null)
+		{
+			return false;
+		}
+
+		long key = FrameLoadScheduler.keyOf(emojiId, priority);
+		boolean isDuplicate = emojiId != NO_EMOJI_ID && !this.queuedKeys.add(key);
+		if (isDuplicate)
+		{
+			return false;
+		}
+
+		ScheduledLoad load = new ScheduledLoad(emojiId, priority, this.sequence.getAndIncrement(), work);
+		this.counters[priority.ordinal()].queued.incrementAndGet();
+		try
+		{
+			currentExecutor.execute(load);
+			return true;
+		}
+		catch (RejectedExecutionException e)
+		{
+			this.dequeued(load);
+			return false;
+		}
+	}
+
+	/**
+	 * Drops every queued task for the emoji. Work that already started is expected
+	 * to stop on its own once its animation is closed.
+	 */
+	void cancel(int emojiId)
+	{
+		ThreadPoolExecutor currentExecutor = this.executor;
+		if (currentExecutor == null)
+		{
+			return;
+		}
+
+		currentExecutor.getQueue().removeIf(runnable ->
+		{
+			ScheduledLoad load = (ScheduledLoad) runnable;
+			boolean isMatch = load.emojiId == emojiId;
+			if (isMatch)
+			{
+				this.dequeued(load);
+			}
+			return isMatch;
+		});
+	}
+
+	void cancelAll()
+	{
+		ThreadPoolExecutor currentExecutor = this.executor;
+		if (currentExecutor == null)
+		{
+			return;
+		}
+
+		currentExecutor.getQueue().removeIf(runnable ->
+		{
+			this.dequeued((ScheduledLoad) runnable);
+			return true;
+		});
+	}
+
+	List<FrameLoadQueueStats> getStats()
+	{
+		List<FrameLoadQueueStats> stats = new ArrayList<>();
+		for (Priority priority : Priority.values())
+		{
+			PriorityCounters counter = this.counters[priority.ordinal()];
+			long started = counter.started.get();
+			long averageWaitMs = started == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(counter.totalWaitNanos.get() / started);
+
+			stats.add(new FrameLoadQueueStats(
+				priority.name(),
+				counter.queued.get(),
+				started,
+				averageWaitMs,
+				TimeUnit.NANOSECONDS.toMillis(counter.maxWaitNanos.get())
+			));
+		}
+		return stats;
+	}
+
+	private void dequeued(ScheduledLoad load)
+	{
+		this.queuedKeys.remove(FrameLoadScheduler.keyOf(load.emojiId, load.priority));
+		this.counters[load.priority.ordinal()].queued.decrementAndGet();
+	}
+
+	private static long keyOf(int emojiId, Priority priority)
+	{
+		return ((long) emojiId << 8) | priority.ordinal();
+	}
+
+	private Thread createLoaderThread(Runnable runnable)
+	{
+		Thread thread = new Thread(runnable);
+		thread.setName("CustomEmoji-FrameLoader");
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	private static class PriorityCounters
+	{
+		final AtomicInteger queued = new AtomicInteger();
+		final AtomicLong started = new AtomicLong();
+		final AtomicLong totalWaitNanos = new AtomicLong();
+		final AtomicLong maxWaitNanos = new AtomicLong();
+	}
+
+	private class ScheduledLoad implements Runnable, Comparable<ScheduledLoad>
+	{
+		final int emojiId;
+		final Priority priority;
+		final long sequenceNumber;
+		final long enqueuedNanos;
+		final Runnable work;
+
+		ScheduledLoad(int emojiId, Priority priority, long sequenceNumber, Runnable work)
+		{
+			this.emojiId = emojiId;
+			this.priority = priority;
+			this.sequenceNumber = sequenceNumber;
+			this.enqueuedNanos = System.nanoTime();
+			this.work = work;
+		}
+
+		@Override
+		public void run()
+		{
+			FrameLoadScheduler.this.dequeued(this);
+
+			long waitNanos = System.nanoTime() - this.enqueuedNanos;
+			PriorityCounters counter = FrameLoadScheduler.this.counters[this.priority.ordinal()];
+			counter.started.incrementAndGet();
+			counter.totalWaitNanos.addAndGet(waitNanos);
+			counter.maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+
+			try
+			{
+				this.work.run();
+			}
+			catch (RuntimeException e)
+			{
+				log.warn("Frame loader task failed for emoji id: {}", this.emojiId, e);
+			}
+		}
+
+		@Override
+		public int compareTo(ScheduledLoad other)
+		{
+			int byPriority = this.priority.compareTo(other.priority);
+			if (byPriority != 0)
+			{
+				return byPriority;
+			}
+			return Long.compare(this.sequenceNumber, other.sequenceNumber);
+		}
+	}
+}
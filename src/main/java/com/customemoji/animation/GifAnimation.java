@@ -4,62 +4,92 @@ import com.customemoji.PluginUtils;
 
 import lombok.extern.slf4j.Slf4j;
 
-import javax.imageio.ImageIO;
-import javax.imageio.ImageReader;
-import javax.imageio.metadata.IIOMetadata;
-import javax.imageio.metadata.IIOMetadataNode;
-import javax.imageio.stream.ImageInputStream;
-
-import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
+import java.awt.image.DataBufferInt;
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-
-import org.w3c.dom.NodeList;
-
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A GIF decoded frame by frame on loader threads and displayed on the client thread.
+ * Decoded frames are published as an immutable {@link FrameTable}, so the render
+ * path never waits on a decoder.
+ * <p>
+ * Frames are addressed by a sequence number that keeps counting across loops. Long
+ * animations in lazy mode only keep a small window of upcoming frames and re-stream
+ * the GIF from the start when they wrap around.
+ * <p>
+ * GIFs with a loop count stop on their last frame. From then on only that frame is
+ * kept and {@link #advance} does no more work.
+ * <p>
+ * With an {@link OffHeapFramePool} the frame pixels live outside the Java heap and
+ * are handed back to the pool when frames are dropped or the animation is closed.
+ */
 @Slf4j
 public class GifAnimation implements Closeable
 {
-	private static final int DEFAULT_FRAME_DELAY_MS = 100;
 	private static final int INITIAL_CAPACITY = 16;
+	private static final long PRELOAD_LOOKAHEAD_MS = 500;
+	private static final int MIN_FRAMES_AHEAD = 2;
+	private static final int MAX_FRAMES_AHEAD = 30;
+	private static final long FRAMES_AHEAD_BYTE_BUDGET = 2L * 1024 * 1024;
+	private static final long WINDOWED_MODE_THRESHOLD_BYTES = 8L * 1024 * 1024;
+	private static final int PARALLEL_DECODE_AHEAD = 8;
 
-	private static final String DISPOSAL_NONE = "none";
-	private static final String DISPOSAL_DO_NOT_DISPOSE = "doNotDispose";
-	private static final String DISPOSAL_RESTORE_TO_BACKGROUND = "restoreToBackgroundColor";
-	private static final String DISPOSAL_RESTORE_TO_PREVIOUS = "restoreToPrevious";
-
-	private byte[] gifData;
 	private final int maxHeight;
 	private final boolean shouldResize;
 	private final boolean useLazyLoading;
 
-	private ImageInputStream imageStream;
-	private ImageReader reader;
-
-	private BufferedImage canvas;
-	private BufferedImage savedCanvas;
-	private int canvasWidth;
-	private int canvasHeight;
-	private String previousDisposalMethod;
-	private Rectangle previousFrameBounds;
+	// Decoder state, only touched while holding decodeLock
+	private final ReentrantLock decodeLock = new ReentrantLock();
+	private byte[] gifData;
+	private GifDecoder decoder;
+	private GifCompositor compositor;
+	private GifFrame decodedFrame;
+	private GifLayout layout;
+	private long frameBytes;
+	private int framesPerLoop;
+	private int framesReadThisLoop;
+	private long firstLoopDecodeNanos;
+
+	private volatile FrameTable frameTable = FrameTable.EMPTY;
+	private volatile Consumer<DecodedFrames> decodeCompleteListener;
+	private volatile DecodeLimits decodeLimits = DecodeLimits.UNLIMITED;
+	private volatile String limitViolation;
+	private volatile int framesAhead = MIN_FRAMES_AHEAD;
+	private volatile int playCount = GifLayout.PLAY_FOREVER;
+	private volatile long lastSequence = Long.MAX_VALUE;
+
+	// Display state, only touched by the thread calling advance()
+	private volatile BufferedImage displayImage;
+	private int[] displayPixels;
+	private long displayedSequence;
+	private volatile long currentSequence;
+	private long lastFrameChangeTime;
 
-	private final List<BufferedImage> frames = new ArrayList<>(INITIAL_CAPACITY);
-	private final List<Integer> frameDelays = new ArrayList<>(INITIAL_CAPACITY);
+	private volatile long byteSize;
 
-	private int currentFrameIndex;
-	private long lastFrameChangeTime;
+	private volatile OffHeapFramePool offHeapPool;
+	private final Set<IndexedFrame> offHeapFrames = ConcurrentHashMap.newKeySet();
 
-	private boolean initialized;
-	private boolean disposed;
-	private boolean allFramesLoaded;
-	private boolean backgroundLoadingStarted;
-	private boolean preloadingInProgress;
+	private volatile boolean initialized;
+	private volatile boolean disposed;
+	private volatile boolean finished;
+	private final AtomicBoolean backgroundLoadingStarted = new AtomicBoolean();
+	private final AtomicBoolean preloadingInProgress = new AtomicBoolean();
 
 	public GifAnimation(byte[] gifData, int maxHeight, boolean shouldResize, boolean useLazyLoading)
 	{
@@ -68,506 +98,817 @@ public class GifAnimation implements Closeable
 		this.shouldResize = shouldResize;
 		this.useLazyLoading = useLazyLoading;
 		this.lastFrameChangeTime = System.currentTimeMillis();
-		this.currentFrameIndex = 0;
+		this.currentSequence = 0;
+		this.displayedSequence = -1;
 		this.initialized = false;
 		this.disposed = false;
-		this.allFramesLoaded = false;
-		this.backgroundLoadingStarted = false;
-		this.preloadingInProgress = false;
+		this.refreshByteSize();
 	}
 
-	public synchronized BufferedImage getCurrentFrame()
+	/**
+	 * Creates an animation from frames that were already decoded, for example by the disk cache.
+	 */
+	public static GifAnimation fromFrames(DecodedFrames decoded)
 	{
-		if (!this.ensureInitialized())
+		return GifAnimation.fromFrames(decoded, null);
+	}
+
+	static GifAnimation fromFrames(DecodedFrames decoded, OffHeapFramePool pool)
+	{
+		GifAnimation animation = new GifAnimation(null, 0, false, false);
+		animation.offHeapPool = pool;
+
+		FrameTable table = FrameTable.EMPTY;
+		for (IndexedFrame decodedFrame : decoded.getFrames())
 		{
-			return null;
+			IndexedFrame frame = animation.storeFrame(decodedFrame);
+			table = table.append(frame);
+			animation.frameBytes += frame.getByteSize();
 		}
+		animation.frameTable = table.markComplete();
+		animation.setPlayCount(decoded.getPlayCount(), table.count);
+
+		animation.showFrame(animation.frameTable, 0);
+		animation.initialized = true;
+		return animation;
+	}
+
+	/**
+	 * Keeps frame pixels in buffers from {@code pool}. Must be called before {@link #initialize}.
+	 */
+	void setOffHeapPool(OffHeapFramePool pool)
+	{
+		this.offHeapPool = pool;
+	}
 
-		if (this.frames.isEmpty())
+	/**
+	 * Registers a callback that receives every frame once the GIF has been decoded to the end.
+	 * It runs on the loader thread that decoded the last frame. Windowed animations never
+	 * hold every frame at once and do not call it.
+	 */
+	public void setDecodeCompleteListener(Consumer<DecodedFrames> listener)
+	{
+		this.decodeCompleteListener = listener;
+	}
+
+	/**
+	 * Sets the limits checked when the GIF is scanned and while its first loop is decoded.
+	 */
+	public void setDecodeLimits(DecodeLimits limits)
+	{
+		this.decodeLimits = limits;
+	}
+
+	/**
+	 * Returns why decoding was refused or aborted, or null while the animation is within its limits.
+	 */
+	public String getLimitViolation()
+	{
+		return this.limitViolation;
+	}
+
+	/**
+	 * Returns the frame selected by the last {@link #advance} call, or null until
+	 * the animation has been initialized.
+	 */
+	public BufferedImage getCurrentFrame()
+	{
+		return this.displayImage;
+	}
+
+	/**
+	 * Moves the display image to the frame that should be showing at {@code now}.
+	 * Called once per client frame by {@link AnimationManager}.
+	 */
+	public void advance(long now)
+	{
+		FrameTable table = this.frameTable;
+		if (!this.initialized || this.disposed || this.finished || table.count == 0)
 		{
-			return null;
+			return;
 		}
 
-		if (this.allFramesLoaded && this.frames.size() == 1)
+		boolean isSingleFrame = table.complete && !table.windowed && table.count == 1;
+		long sequence = isSingleFrame ? this.currentSequence : this.calculateCurrentSequence(table, now);
+		this.showFrame(table, sequence);
+
+		boolean isLastPlayDone = sequence >= this.lastSequence;
+		if (isLastPlayDone)
 		{
-			return this.frames.get(0);
+			this.finishPlayback(table, sequence);
 		}
+	}
 
-		int frameIndex = this.calculateCurrentFrameIndex();
-		return this.frames.get(frameIndex);
+	/**
+	 * True once a GIF with a loop count has played out and only shows its last frame.
+	 */
+	public boolean isFinished()
+	{
+		return this.finished;
 	}
 
-	public synchronized boolean needsPreloading()
+	public boolean needsPreloading()
 	{
-		if (!this.useLazyLoading || this.allFramesLoaded || this.preloadingInProgress)
+		FrameTable table = this.frameTable;
+		if (!this.useLazyLoading || table.complete || this.preloadingInProgress.get())
 		{
 			return false;
 		}
 
-		int loadedCount = this.frames.size();
-		int framesRemaining = loadedCount - this.currentFrameIndex - 1;
-		boolean needsMoreFrames = framesRemaining < 5;
+		long sequence = this.currentSequence;
+		long framesBuffered = table.endSequence() - sequence - 1;
+		boolean hasRoom = !table.isFull() || table.firstSequence < sequence;
 
-		return needsMoreFrames;
+		return framesBuffered < this.framesAhead && hasRoom;
 	}
 
 	public void preloadFrames()
 	{
-		synchronized (this)
+		if (this.frameTable.complete || !this.preloadingInProgress.compareAndSet(false, true))
 		{
-			if (this.preloadingInProgress || this.allFramesLoaded)
-			{
-				return;
-			}
-			this.preloadingInProgress = true;
+			return;
 		}
 
 		try
 		{
-			for (int i = 0; i < 5 && !this.allFramesLoaded; i++)
+			boolean needsMoreFrames = true;
+			while (needsMoreFrames)
 			{
-				this.loadNextFrame();
+				boolean loaded = this.loadNextFrame();
+				long framesBuffered = this.frameTable.endSequence() - this.currentSequence - 1;
+				needsMoreFrames = loaded && framesBuffered < this.framesAhead;
 			}
 		}
 		finally
 		{
-			synchronized (this)
-			{
-				this.preloadingInProgress = false;
-			}
+			this.preloadingInProgress.set(false);
 		}
 	}
 
-	public synchronized boolean needsBackgroundLoading()
+	public boolean needsBackgroundLoading()
 	{
 		if (this.useLazyLoading)
 		{
 			return false;
 		}
-		if (!this.initialized || this.disposed || this.allFramesLoaded)
+		if (!this.initialized || this.disposed || this.frameTable.complete)
 		{
 			return false;
 		}
-		if (this.backgroundLoadingStarted)
+
+		return this.backgroundLoadingStarted.compareAndSet(false, true);
+	}
+
+	/**
+	 * Decodes frames until the animation is complete, the decoder has been dropped, or a
+	 * windowed animation's window is full.
+	 */
+	public void loadAllFrames()
+	{
+		boolean hasMoreFrames = true;
+		while (hasMoreFrames && !this.disposed)
 		{
-			return false;
+			hasMoreFrames = this.loadNextFrame();
 		}
-		this.backgroundLoadingStarted = true;
-		return true;
 	}
 
-	public void loadAllFrames()
+	/**
+	 * Decodes every remaining frame, decompressing up to {@value #PARALLEL_DECODE_AHEAD} frames
+	 * ahead on {@code executor}. Compositing depends on the previous frame's disposal, so it
+	 * stays in order on the calling thread.
+	 */
+	public void loadAllFrames(Executor executor)
 	{
-		while (!this.allFramesLoaded && !this.disposed)
+		this.decodeLock.lock();
+		try
 		{
-			this.loadNextFrame();
+			FrameTable table = this.frameTable;
+			if (table.complete || table.windowed || this.disposed || this.decoder == null)
+			{
+				return;
+			}
+
+			GifDecoder source = this.decoder;
+			GifLayout frameLayout = this.layout;
+			int frameCount = frameLayout.getFrameCount();
+			int nextToSubmit = this.framesReadThisLoop;
+			Deque<CompletableFuture<GifFrame>> pending = new ArrayDeque<>();
+
+			boolean hasMoreFrames = nextToSubmit < frameCount;
+			while (hasMoreFrames && !this.disposed)
+			{
+				while (nextToSubmit < frameCount && pending.size() < PARALLEL_DECODE_AHEAD)
+				{
+					int frameOffset = frameLayout.getFrameOffset(nextToSubmit++);
+					pending.add(CompletableFuture.supplyAsync(() -> GifAnimation.decompressFrame(source, frameOffset), executor));
+				}
+
+				long startNanos = System.nanoTime();
+				GifFrame frame = pending.remove().join();
+				hasMoreFrames = frame != null && this.appendComposedFrame(this.frameTable, frame) && !pending.isEmpty();
+				if (hasMoreFrames && !this.isWithinDecodeTime(startNanos))
+				{
+					pending.forEach(future -> future.cancel(false));
+					return;
+				}
+			}
+
+			pending.forEach(future -> future.cancel(false));
+			this.finishDecoding(this.frameTable);
+		}
+		catch (CompletionException e)
+		{
+			log.debug("Failed to load frame {}", this.frameTable.endSequence(), e.getCause());
+			this.finishDecoding(this.frameTable);
+		}
+		catch (RejectedExecutionException e)
+		{
+			// Shutting down, the animation is about to be closed
+		}
+		finally
+		{
+			this.unlockDecoder();
 		}
 	}
 
-	@Override
-	public synchronized void close()
+	/**
+	 * Approximate heap usage of this animation: stored frames, the display image
+	 * and, while frames are still being decoded, the GIF bytes and decoder canvas.
+	 */
+	public long getByteSize()
 	{
-		this.disposed = true;
-		this.closeReader();
-		this.frames.clear();
-		this.frameDelays.clear();
+		return this.byteSize;
 	}
 
-	private synchronized boolean ensureInitialized()
+	@Override
+	public void close()
 	{
-		if (this.disposed)
-		{
-			return false;
-		}
+		this.disposed = true;
+		this.frameTable = FrameTable.EMPTY;
+		this.displayImage = null;
 
-		if (this.initialized)
+		// A loader thread that is mid-frame releases the decoder itself once it sees the disposed flag
+		if (this.decodeLock.tryLock())
 		{
-			return true;
+			try
+			{
+				this.closeDecoder();
+				this.frameBytes = 0;
+			}
+			finally
+			{
+				this.unlockDecoder();
+			}
 		}
+		this.refreshByteSize();
+	}
 
+	/**
+	 * Decodes the first frame. Meant to run on a loader thread before the animation is handed to renderers.
+	 */
+	public boolean initialize()
+	{
+		this.decodeLock.lock();
 		try
 		{
-			ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(this.gifData);
-			this.imageStream = ImageIO.createImageInputStream(byteArrayInputStream);
-			if (this.imageStream == null)
+			if (this.disposed)
 			{
 				return false;
 			}
 
-			Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("gif");
-			if (!readers.hasNext())
+			if (this.initialized)
 			{
-				this.imageStream.close();
-				return false;
+				return true;
 			}
 
-			this.reader = readers.next();
-			this.reader.setInput(this.imageStream);
+			this.decoder = new GifDecoder(this.gifData);
+			GifLayout layout = this.decoder.scan();
+			if (layout.getFrameViolation() != null)
+			{
+				this.limitViolation = layout.getFrameViolation();
+				this.closeDecoder();
+				return false;
+			}
 
-			this.initializeCanvas();
+			if (layout.getFrameCount() == 0)
+			{
+				this.closeDecoder();
+				return false;
+			}
 
-			boolean loaded = this.loadNextFrame();
-			if (!loaded)
+			this.limitViolation = this.decodeLimits.checkAnimation(this.decoder.getWidth(), this.decoder.getHeight(), layout.getFrameCount());
+			if (this.limitViolation != null)
 			{
-				this.close();
+				this.closeDecoder();
 				return false;
 			}
 
-			this.initialized = true;
-			return true;
+			this.compositor = new GifCompositor(this.decoder.getWidth(), this.decoder.getHeight());
+			this.decodedFrame = new GifFrame();
+			this.planFrameRetention(layout);
+			this.refreshByteSize();
 		}
 		catch (IOException e)
 		{
 			log.debug("Failed to initialize GIF animation", e);
 			return false;
 		}
+		finally
+		{
+			this.unlockDecoder();
+		}
+
+		boolean loaded = this.loadNextFrame();
+		if (!loaded)
+		{
+			this.close();
+			return false;
+		}
+
+		this.showFrame(this.frameTable, 0);
+		this.initialized = true;
+		return true;
 	}
 
-	private void initializeCanvas() throws IOException
+	/**
+	 * Sizes the look-ahead from frame size and delay, and switches long lazy animations to a
+	 * fixed window of frames so their memory use stays flat.
+	 */
+	private void planFrameRetention(GifLayout layout)
 	{
-		IIOMetadata streamMetadata = this.reader.getStreamMetadata();
-		if (streamMetadata != null)
+		int outputWidth = this.decoder.getWidth();
+		int outputHeight = this.decoder.getHeight();
+		boolean isDownscaled = this.shouldResize && outputHeight > this.maxHeight && this.maxHeight > 0;
+		if (isDownscaled)
 		{
-			String formatName = streamMetadata.getNativeMetadataFormatName();
-			IIOMetadataNode root = (IIOMetadataNode) streamMetadata.getAsTree(formatName);
+			outputWidth = Math.max(1, outputWidth * this.maxHeight / outputHeight);
+			outputHeight = this.maxHeight;
+		}
 
-			NodeList screenDescList = root.getElementsByTagName("LogicalScreenDescriptor");
-			if (screenDescList.getLength() > 0)
-			{
-				IIOMetadataNode screenDesc = (IIOMetadataNode) screenDescList.item(0);
-				String widthStr = screenDesc.getAttribute("logicalScreenWidth");
-				String heightStr = screenDesc.getAttribute("logicalScreenHeight");
+		// Stored frames take roughly one palette index per pixel
+		long bytesPerFrame = Math.max(1, (long) outputWidth * outputHeight);
+		int averageDelayMs = Math.max(1, layout.getAverageDelayMs());
 
-				if (widthStr != null && !widthStr.isEmpty())
-				{
-					this.canvasWidth = Integer.parseInt(widthStr);
-				}
-				if (heightStr != null && !heightStr.isEmpty())
-				{
-					this.canvasHeight = Integer.parseInt(heightStr);
-				}
-			}
-		}
+		int framesForLookahead = (int) ((PRELOAD_LOOKAHEAD_MS + averageDelayMs - 1) / averageDelayMs);
+		int framesForBudget = (int) Math.min(MAX_FRAMES_AHEAD, FRAMES_AHEAD_BYTE_BUDGET / bytesPerFrame);
+		this.framesAhead = Math.max(MIN_FRAMES_AHEAD, Math.min(framesForLookahead, framesForBudget));
+		this.framesPerLoop = layout.getFrameCount();
+		this.layout = layout;
+		this.setPlayCount(layout.getPlayCount(), layout.getFrameCount());
 
-		if (this.canvasWidth == 0 || this.canvasHeight == 0)
+		int windowSize = this.framesAhead + 2;
+		boolean isLongAnimation = bytesPerFrame * layout.getFrameCount() > WINDOWED_MODE_THRESHOLD_BYTES;
+		boolean useWindow = this.useLazyLoading && isLongAnimation && layout.getFrameCount() > windowSize;
+		if (useWindow)
 		{
-			BufferedImage firstFrame = this.reader.read(0);
-			this.canvasWidth = firstFrame.getWidth();
-			this.canvasHeight = firstFrame.getHeight();
+			this.frameTable = FrameTable.window(windowSize);
+			log.debug("Streaming {} frame animation through a {} frame window", layout.getFrameCount(), windowSize);
 		}
-
-		this.canvas = new BufferedImage(this.canvasWidth, this.canvasHeight, BufferedImage.TYPE_INT_ARGB);
-		this.previousDisposalMethod = DISPOSAL_NONE;
-		this.previousFrameBounds = null;
 	}
 
 	private boolean loadNextFrame()
 	{
-		int nextIndex;
-		synchronized (this)
+		this.decodeLock.lock();
+		try
 		{
-			if (this.allFramesLoaded || this.disposed)
+			FrameTable table = this.frameTable;
+			if (table.complete || this.disposed || this.decoder == null)
 			{
 				return false;
 			}
-			nextIndex = this.frames.size();
-		}
 
-		BufferedImage compositedFrame;
-		int delay;
-		try
-		{
-			BufferedImage rawFrame = this.reader.read(nextIndex);
-
-			FrameMetadata metadata = this.getFrameMetadata(nextIndex);
-			delay = metadata.delayMs;
-
-			this.applyDisposalMethod();
-
-			boolean needsSaveState = DISPOSAL_RESTORE_TO_PREVIOUS.equals(metadata.disposalMethod);
-			if (needsSaveState)
+			boolean hasEveryPlayDecoded = table.endSequence() > this.lastSequence;
+			if (hasEveryPlayDecoded)
 			{
-				this.savedCanvas = this.copyCanvas();
+				this.finishDecoding(table);
+				return false;
 			}
 
-			Graphics2D g = this.canvas.createGraphics();
-			try
+			if (table.isFull())
 			{
-				g.drawImage(rawFrame, metadata.x, metadata.y, null);
+				boolean isOldestFrameShown = table.firstSequence < this.currentSequence;
+				if (!isOldestFrameShown)
+				{
+					return false;
+				}
+
+				IndexedFrame oldest = table.get(table.firstSequence);
+				this.frameBytes -= oldest.getByteSize();
+				table = table.dropOldest();
+				this.releaseFrame(oldest);
 			}
-			finally
+
+			boolean isLoopFinished = table.windowed && this.framesReadThisLoop == this.framesPerLoop;
+			if (isLoopFinished)
 			{
-				g.dispose();
+				this.decoder.rewind();
+				this.compositor.reset();
+				this.framesReadThisLoop = 0;
 			}
 
-			this.previousDisposalMethod = metadata.disposalMethod;
-			this.previousFrameBounds = new Rectangle(metadata.x, metadata.y, rawFrame.getWidth(), rawFrame.getHeight());
-
-			BufferedImage canvasCopy = this.copyCanvas();
-
-			compositedFrame = canvasCopy;
-			if (this.shouldResize)
+			long startNanos = System.nanoTime();
+			boolean hasFrame = this.decoder.readFrame(this.decodedFrame);
+			if (!hasFrame)
 			{
-				compositedFrame = PluginUtils.resizeImage(canvasCopy, this.maxHeight);
+				this.finishDecoding(table);
+				return false;
 			}
+
+			return this.appendComposedFrame(table, this.decodedFrame) && this.isWithinDecodeTime(startNanos);
 		}
-		catch (IndexOutOfBoundsException e)
+		catch (IOException e)
 		{
-			synchronized (this)
-			{
-				this.allFramesLoaded = true;
-				this.closeReader();
-			}
+			log.debug("Failed to load frame {}", this.frameTable.endSequence(), e);
+			this.finishDecoding(this.frameTable);
 			return false;
 		}
-		catch (IOException e)
+		finally
 		{
-			log.debug("Failed to load frame {}", nextIndex, e);
-			synchronized (this)
-			{
-				this.allFramesLoaded = true;
-				this.closeReader();
-			}
-			return false;
+			this.unlockDecoder();
 		}
+	}
 
-		synchronized (this)
+	private void setPlayCount(int plays, int frameCount)
+	{
+		this.playCount = plays;
+		this.lastSequence = plays == GifLayout.PLAY_FOREVER ? Long.MAX_VALUE : (long) plays * frameCount - 1;
+	}
+
+	/**
+	 * Keeps only the frame the animation stopped on. Skipped while a loader holds the
+	 * decoder, the next client frame tries again.
+	 */
+	private void finishPlayback(FrameTable table, long sequence)
+	{
+		if (!this.decodeLock.tryLock())
+		{
+			return;
+		}
+
+		try
 		{
 			if (this.disposed)
 			{
-				return false;
+				return;
 			}
-			this.frames.add(compositedFrame);
-			this.frameDelays.add(delay);
+
+			IndexedFrame finalFrame = table.get(sequence);
+			this.closeDecoder();
+			this.frameTable = FrameTable.EMPTY.append(finalFrame).markComplete();
+			this.frameBytes = finalFrame.getByteSize();
+			this.finished = true;
+			this.releaseOffHeapFrames(finalFrame);
+		}
+		finally
+		{
+			this.unlockDecoder();
+		}
+		this.refreshByteSize();
+	}
+
+	/**
+	 * Composes a decompressed frame onto the canvas and publishes the result. Must hold decodeLock.
+	 */
+	private boolean appendComposedFrame(FrameTable table, GifFrame frame)
+	{
+		this.framesReadThisLoop++;
+		this.compositor.compose(frame);
+		IndexedFrame storedFrame = this.storeFrame(this.encodeCanvas(this.compositor, frame.getDelayMs()));
+
+		if (this.disposed)
+		{
+			this.closeDecoder();
+			return false;
 		}
 
+		this.frameTable = table.append(storedFrame);
+		this.frameBytes += storedFrame.getByteSize();
+		this.refreshByteSize();
 		return true;
 	}
 
-	private void applyDisposalMethod()
+	private IndexedFrame storeFrame(IndexedFrame frame)
 	{
-		if (this.previousFrameBounds == null)
+		OffHeapFramePool pool = this.offHeapPool;
+		if (pool == null)
 		{
-			return;
+			return frame;
 		}
 
-		switch (this.previousDisposalMethod)
+		IndexedFrame offHeapFrame = frame.moveOffHeap(pool);
+		this.offHeapFrames.add(offHeapFrame);
+		return offHeapFrame;
+	}
+
+	private void releaseFrame(IndexedFrame frame)
+	{
+		boolean isOwned = this.offHeapFrames.remove(frame);
+		if (isOwned)
 		{
-			case DISPOSAL_RESTORE_TO_BACKGROUND:
-				this.clearPreviousFrameArea();
-				break;
-			case DISPOSAL_RESTORE_TO_PREVIOUS:
-				this.restoreToPreviousCanvas();
-				break;
-			case DISPOSAL_NONE:
-			case DISPOSAL_DO_NOT_DISPOSE:
-			default:
-				break;
+			frame.release(this.offHeapPool);
 		}
 	}
 
-	private void clearPreviousFrameArea()
+	/**
+	 * Hands every off-heap frame except {@code kept} back to the pool. Must hold decodeLock,
+	 * which keeps a disk cache write from reading frames while they are reused.
+	 */
+	private void releaseOffHeapFrames(IndexedFrame kept)
+	{
+		for (IndexedFrame frame : this.offHeapFrames)
+		{
+			if (frame != kept)
+			{
+				this.releaseFrame(frame);
+			}
+		}
+	}
+
+	/**
+	 * Releases the decode lock, first returning the frames of a closed animation
+	 * whose close() found the lock taken.
+	 */
+	private void unlockDecoder()
 	{
-		Graphics2D g = this.canvas.createGraphics();
 		try
 		{
-			g.setBackground(new Color(0, 0, 0, 0));
-			g.clearRect(
-				this.previousFrameBounds.x,
-				this.previousFrameBounds.y,
-				this.previousFrameBounds.width,
-				this.previousFrameBounds.height
-			);
+			if (this.disposed)
+			{
+				this.releaseOffHeapFrames(null);
+			}
 		}
 		finally
 		{
-			g.dispose();
+			this.decodeLock.unlock();
 		}
 	}
 
-	private void restoreToPreviousCanvas()
+	/**
+	 * Watchdog for the first loop: once decoding it has taken longer than the limit, the
+	 * decoder is dropped and the frames decoded so far become the whole animation. The
+	 * truncated result is not handed to the disk cache. Must hold decodeLock.
+	 */
+	private boolean isWithinDecodeTime(long startNanos)
 	{
-		if (this.savedCanvas == null)
+		boolean isFirstLoop = this.frameTable.endSequence() <= this.framesPerLoop;
+		if (!isFirstLoop || this.decoder == null)
 		{
-			return;
+			return true;
 		}
 
-		Graphics2D g = this.canvas.createGraphics();
-		try
-		{
-			g.setBackground(new Color(0, 0, 0, 0));
-			g.clearRect(0, 0, this.canvasWidth, this.canvasHeight);
-			g.drawImage(this.savedCanvas, 0, 0, null);
-		}
-		finally
+		this.firstLoopDecodeNanos += System.nanoTime() - startNanos;
+		long decodeMillis = TimeUnit.NANOSECONDS.toMillis(this.firstLoopDecodeNanos);
+		if (decodeMillis <= this.decodeLimits.getMaxDecodeMillis())
 		{
-			g.dispose();
+			return true;
 		}
+
+		this.limitViolation = String.format("decoding took over %d ms", this.decodeLimits.getMaxDecodeMillis());
+		log.debug("Stopped decoding animation after {} ms", decodeMillis);
+		this.stopDecoding(this.frameTable);
+		return false;
 	}
 
-	private BufferedImage copyCanvas()
+	private static GifFrame decompressFrame(GifDecoder source, int frameOffset)
 	{
-		BufferedImage copy = new BufferedImage(this.canvasWidth, this.canvasHeight, BufferedImage.TYPE_INT_ARGB);
-		Graphics2D g = copy.createGraphics();
+		GifFrame frame = new GifFrame();
 		try
 		{
-			g.drawImage(this.canvas, 0, 0, null);
+			boolean hasFrame = source.duplicate().readFrameAt(frameOffset, frame);
+			return hasFrame ? frame : null;
 		}
-		finally
+		catch (IOException e)
 		{
-			g.dispose();
+			throw new UncheckedIOException(e);
 		}
-		return copy;
 	}
 
-	private FrameMetadata getFrameMetadata(int frameIndex)
+	private void finishDecoding(FrameTable table)
 	{
-		FrameMetadata metadata = new FrameMetadata();
-		metadata.x = 0;
-		metadata.y = 0;
-		metadata.delayMs = DEFAULT_FRAME_DELAY_MS;
-		metadata.disposalMethod = DISPOSAL_NONE;
+		FrameTable completed = this.stopDecoding(table);
 
-		try
+		Consumer<DecodedFrames> listener = this.decodeCompleteListener;
+		if (completed != null && listener != null && !completed.windowed)
 		{
-			IIOMetadata frameMetadata = this.reader.getImageMetadata(frameIndex);
-			if (frameMetadata == null)
-			{
-				return metadata;
-			}
-
-			String formatName = frameMetadata.getNativeMetadataFormatName();
-			IIOMetadataNode root = (IIOMetadataNode) frameMetadata.getAsTree(formatName);
-
-			this.parseImageDescriptor(root, metadata);
-			this.parseGraphicControlExtension(root, metadata);
+			listener.accept(new DecodedFrames(Arrays.asList(completed.frames).subList(0, completed.count), this.playCount));
 		}
-		catch (Exception e)
+	}
+
+	/**
+	 * Drops the decoder and publishes the frames decoded so far as the whole animation. Returns the
+	 * completed table, or null when there was nothing to keep. Must hold decodeLock.
+	 */
+	private FrameTable stopDecoding(FrameTable table)
+	{
+		this.closeDecoder();
+		if (this.disposed || table.count == 0)
 		{
-			log.debug("Failed to get frame metadata for frame {}", frameIndex, e);
+			return null;
 		}
 
-		return metadata;
+		FrameTable completed = table.markComplete();
+		this.frameTable = completed;
+		return completed;
 	}
 
-	private void parseImageDescriptor(IIOMetadataNode root, FrameMetadata metadata)
+	private IndexedFrame encodeCanvas(GifCompositor frameCompositor, int delayMs)
 	{
-		NodeList imageDescList = root.getElementsByTagName("ImageDescriptor");
-		if (imageDescList.getLength() == 0)
+		if (!this.shouldResize)
 		{
-			return;
+			return IndexedFrame.encode(frameCompositor.getPixels(), frameCompositor.getWidth(), frameCompositor.getHeight(), delayMs);
 		}
 
-		IIOMetadataNode imageDesc = (IIOMetadataNode) imageDescList.item(0);
-		metadata.x = this.parseIntAttribute(imageDesc, "imageLeftPosition", 0);
-		metadata.y = this.parseIntAttribute(imageDesc, "imageTopPosition", 0);
+		BufferedImage resized = PluginUtils.resizeImage(this.copyCanvas(frameCompositor), this.maxHeight);
+		int width = resized.getWidth();
+		int height = resized.getHeight();
+		int[] pixels = resized.getRGB(0, 0, width, height, null, 0, width);
+		return IndexedFrame.encode(pixels, width, height, delayMs);
 	}
 
-	private void parseGraphicControlExtension(IIOMetadataNode root, FrameMetadata metadata)
+	private void showFrame(FrameTable table, long sequence)
 	{
-		NodeList gceList = root.getElementsByTagName("GraphicControlExtension");
-		if (gceList.getLength() == 0)
+		if (this.displayPixels == null)
 		{
-			return;
+			IndexedFrame firstFrame = table.get(sequence);
+			BufferedImage image = new BufferedImage(firstFrame.getWidth(), firstFrame.getHeight(), BufferedImage.TYPE_INT_ARGB);
+			this.displayPixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			this.displayImage = image;
+			this.refreshByteSize();
 		}
 
-		IIOMetadataNode gce = (IIOMetadataNode) gceList.item(0);
-
-		int delayHundredths = this.parseIntAttribute(gce, "delayTime", 0);
-		int delayMs = delayHundredths * 10;
-		metadata.delayMs = delayMs > 0 ? delayMs : DEFAULT_FRAME_DELAY_MS;
-
-		String disposalStr = gce.getAttribute("disposalMethod");
-		if (disposalStr != null && !disposalStr.isEmpty())
+		if (sequence != this.displayedSequence)
 		{
-			metadata.disposalMethod = disposalStr;
+			table.get(sequence).writeTo(this.displayPixels);
+			this.displayedSequence = sequence;
 		}
 	}
 
-	private int parseIntAttribute(IIOMetadataNode node, String attributeName, int defaultValue)
+	private BufferedImage copyCanvas(GifCompositor frameCompositor)
 	{
-		String value = node.getAttribute(attributeName);
-		if (value == null || value.isEmpty())
-		{
-			return defaultValue;
-		}
-		return Integer.parseInt(value);
+		int width = frameCompositor.getWidth();
+		int height = frameCompositor.getHeight();
+
+		BufferedImage copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		copy.getRaster().setDataElements(0, 0, width, height, frameCompositor.getPixels());
+		return copy;
 	}
 
-	private int calculateCurrentFrameIndex()
+	private long calculateCurrentSequence(FrameTable table, long now)
 	{
-		int loadedCount = this.frames.size();
-		if (loadedCount == 0)
-		{
-			return 0;
-		}
+		long sequence = this.currentSequence;
+		int currentDelay = table.get(sequence).getDelayMs();
+		long elapsed = now - this.lastFrameChangeTime;
 
-		if (loadedCount == 1)
+		boolean hasFullCycleElapsed = table.complete && !table.windowed && elapsed >= table.totalDurationMs + currentDelay;
+		if (hasFullCycleElapsed)
 		{
-			return 0;
+			// Skip whole loops at once after the animation has been off screen for a while
+			long skipped = elapsed - elapsed % table.totalDurationMs;
+			elapsed -= skipped;
+			this.lastFrameChangeTime += skipped;
+			sequence = Math.min(this.lastSequence, sequence + skipped / table.totalDurationMs * table.count);
 		}
 
-		long now = System.currentTimeMillis();
-		int currentDelay = this.frameDelays.get(this.currentFrameIndex);
-		long elapsed = now - this.lastFrameChangeTime;
-
 		while (elapsed >= currentDelay)
 		{
 			elapsed -= currentDelay;
-			int nextIndex = this.currentFrameIndex + 1;
+			long nextSequence = sequence + 1;
 
-			if (nextIndex >= loadedCount)
+			if (nextSequence > this.lastSequence || !table.contains(nextSequence))
 			{
-				if (this.allFramesLoaded)
-				{
-					nextIndex = 0;
-				}
-				else
-				{
-					this.lastFrameChangeTime = now;
-					return this.currentFrameIndex;
-				}
+				// Last play is over or the next frame is not decoded yet, hold the current one
+				this.lastFrameChangeTime = now;
+				break;
 			}
 
-			this.currentFrameIndex = nextIndex;
+			sequence = nextSequence;
 			this.lastFrameChangeTime = now - elapsed;
-			currentDelay = this.frameDelays.get(this.currentFrameIndex);
+			currentDelay = table.get(sequence).getDelayMs();
 		}
 
-		return this.currentFrameIndex;
+		this.currentSequence = sequence;
+		return sequence;
+	}
+
+	private void closeDecoder()
+	{
+		this.decoder = null;
+		this.compositor = null;
+		this.decodedFrame = null;
+		this.gifData = null;
+		this.refreshByteSize();
+	}
+
+	private void refreshByteSize()
+	{
+		long total = this.frameBytes;
+		int[] pixels = this.displayPixels;
+		if (pixels != null && this.displayImage != null)
+		{
+			total += (long) pixels.length * Integer.BYTES;
+		}
+		GifCompositor canvas = this.compositor;
+		if (canvas != null)
+		{
+			total += (long) canvas.getWidth() * canvas.getHeight() * Integer.BYTES;
+		}
+		byte[] data = this.gifData;
+		if (data != null)
+		{
+			total += data.length;
+		}
+		this.byteSize = total;
 	}
 
-	private void closeReader()
+	/**
+	 * Snapshot of the decoded frames, holding sequences {@code firstSequence} up to
+	 * {@code firstSequence + count}. Appending reuses the backing array when it has room:
+	 * a writer only fills slots that no published snapshot reads, and a windowed table
+	 * only drops frames the display has already moved past.
+	 */
+	private static final class FrameTable
 	{
-		if (this.reader != null)
+		static final FrameTable EMPTY = new FrameTable(new IndexedFrame[0], 0, 0, 0, false, false);
+
+		final IndexedFrame[] frames;
+		final long firstSequence;
+		final int count;
+		final long totalDurationMs;
+		final boolean complete;
+		final boolean windowed;
+
+		FrameTable(IndexedFrame[] frames, long firstSequence, int count, long totalDurationMs, boolean complete, boolean windowed)
 		{
-			this.reader.dispose();
-			this.reader = null;
+			this.frames = frames;
+			this.firstSequence = firstSequence;
+			this.count = count;
+			this.totalDurationMs = totalDurationMs;
+			this.complete = complete;
+			this.windowed = windowed;
 		}
 
-		if (this.imageStream != null)
+		static FrameTable window(int size)
 		{
-			try
+			return new FrameTable(new IndexedFrame[size], 0, 0, 0, false, true);
+		}
+
+		long endSequence()
+		{
+			return this.firstSequence + this.count;
+		}
+
+		boolean isFull()
+		{
+			return this.windowed && this.count == this.frames.length;
+		}
+
+		boolean contains(long sequence)
+		{
+			boolean isLooping = this.complete && !this.windowed;
+			return isLooping || (sequence >= this.firstSequence && sequence < this.endSequence());
+		}
+
+		IndexedFrame get(long sequence)
+		{
+			if (this.windowed)
 			{
-				this.imageStream.close();
+				return this.frames[(int) (sequence % this.frames.length)];
 			}
-			catch (IOException e)
+			if (this.complete)
 			{
-				log.debug("Error closing image stream", e);
+				return this.frames[(int) (sequence % this.count)];
 			}
-			this.imageStream = null;
+			return this.frames[(int) sequence];
 		}
 
-		this.canvas = null;
-		this.savedCanvas = null;
-		this.gifData = null;
-	}
+		FrameTable append(IndexedFrame frame)
+		{
+			IndexedFrame[] backing = this.frames;
+			if (this.windowed)
+			{
+				backing[(int) (this.endSequence() % backing.length)] = frame;
+			}
+			else
+			{
+				if (this.count == backing.length)
+				{
+					backing = Arrays.copyOf(backing, Math.max(INITIAL_CAPACITY, backing.length * 2));
+				}
+				backing[this.count] = frame;
+			}
 
-	private static class FrameMetadata
-	{
-		int x;
-		int y;
-		int delayMs;
-		String disposalMethod;
+			return new FrameTable(backing, this.firstSequence, this.count + 1, this.totalDurationMs + frame.getDelayMs(), false, this.windowed);
+		}
+
+		FrameTable dropOldest()
+		{
+			IndexedFrame oldest = this.get(this.firstSequence);
+			return new FrameTable(this.frames, this.firstSequence + 1, this.count - 1, this.totalDurationMs - oldest.getDelayMs(), false, this.windowed);
+		}
+
+		FrameTable markComplete()
+		{
+			return new FrameTable(this.frames, this.firstSequence, this.count, this.totalDurationMs, true, this.windowed);
+		}
 	}
 }
@@ -0,0 +1,161 @@
+package com.customemoji.animation;
+
+import java.util.Arrays;
+
+/**
+ * Builds full animation frames by drawing each decoded GIF frame onto a
+ * logical-screen sized ARGB canvas, honoring the previous frame's disposal method.
+ */
+public class GifCompositor
+{
+	private final int width;
+	private final int height;
+	private final int[] canvas;
+	private int[] savedCanvas;
+
+	private boolean hasPreviousFrame;
+	private int previousDisposalMethod;
+	private int previousX;
+	private int previousY;
+	private int previousWidth;
+	private int previousHeight;
+
+	public GifCompositor(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+		this.canvas = new int[width * height];
+		this.hasPreviousFrame = false;
+		this.previousDisposalMethod = GifFrame.DISPOSAL_NONE;
+	}
+
+	public int getWidth()
+	{
+		return this.width;
+	}
+
+	public int getHeight()
+	{
+		return this.height;
+	}
+
+	/**
+	 * The live canvas. Callers must copy it if they keep the pixels past the next {@link #compose}.
+	 */
+	public int[] getPixels()
+	{
+		return this.canvas;
+	}
+
+	public void compose(GifFrame frame)
+	{
+		this.applyPreviousDisposal();
+
+		boolean needsSaveState = frame.disposalMethod == GifFrame.DISPOSAL_RESTORE_TO_PREVIOUS;
+		if (needsSaveState)
+		{
+			if (this.savedCanvas == null)
+			{
+				this.savedCanvas = new int[this.canvas.length];
+			}
+			System.arraycopy(this.canvas, 0, this.savedCanvas, 0, this.canvas.length);
+		}
+
+		this.drawFrame(frame);
+
+		this.hasPreviousFrame = true;
+		this.previousDisposalMethod = frame.disposalMethod;
+		this.previousX = frame.x;
+		this.previousY = frame.y;
+		this.previousWidth = frame.width;
+		this.previousHeight = frame.height;
+	}
+
+	/**
+	 * Clears the canvas so the animation can be composed again from its first frame.
+	 */
+	public void reset()
+	{
+		Arrays.fill(this.canvas, 0);
+		this.hasPreviousFrame = false;
+		this.previousDisposalMethod = GifFrame.DISPOSAL_NONE;
+	}
+
+	private void applyPreviousDisposal()
+	{
+		if (!this.hasPreviousFrame)
+		{
+			return;
+		}
+
+		switch (this.previousDisposalMethod)
+		{
+			case GifFrame.DISPOSAL_RESTORE_TO_BACKGROUND:
+				this.clearPreviousFrameArea();
+				break;
+			case GifFrame.DISPOSAL_RESTORE_TO_PREVIOUS:
+				this.restoreToPreviousCanvas();
+				break;
+			case GifFrame.DISPOSAL_NONE:
+			case GifFrame.DISPOSAL_DO_NOT_DISPOSE:
+			default:
+				break;
+		}
+	}
+
+	private void clearPreviousFrameArea()
+	{
+		int startX = Math.max(0, this.previousX);
+		int endX = Math.min(this.width, this.previousX + this.previousWidth);
+		int startY = Math.max(0, this.previousY);
+		int endY = Math.min(this.height, this.previousY + this.previousHeight);
+
+		if (startX >= endX)
+		{
+			return;
+		}
+
+		for (int y = startY; y < endY; y++)
+		{
+			int rowOffset = y * this.width;
+			Arrays.fill(this.canvas, rowOffset + startX, rowOffset + endX, 0);
+		}
+	}
+
+	private void restoreToPreviousCanvas()
+	{
+		if (this.savedCanvas == null)
+		{
+			return;
+		}
+
+		System.arraycopy(this.savedCanvas, 0, this.canvas, 0, this.canvas.length);
+	}
+
+	private void drawFrame(GifFrame frame)
+	{
+		int[] colorTable = frame.colorTable;
+		byte[] indices = frame.indices;
+		int transparentIndex = frame.transparentIndex;
+
+		int startX = Math.max(0, frame.x);
+		int endX = Math.min(this.width, frame.x + frame.width);
+		int startY = Math.max(0, frame.y);
+		int endY = Math.min(this.height, frame.y + frame.height);
+
+		for (int y = startY; y < endY; y++)
+		{
+			int source = (y - frame.y) * frame.width + (startX - frame.x);
+			int destination = y * this.width + startX;
+
+			for (int x = startX; x < endX; x++, source++, destination++)
+			{
+				int colorIndex = indices[source] & 0xFF;
+				if (colorIndex != transparentIndex)
+				{
+					this.canvas[destination] = colorTable[colorIndex];
+				}
+			}
+		}
+	}
+}
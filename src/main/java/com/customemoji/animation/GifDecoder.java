@@ -0,0 +1,621 @@
+package com.customemoji.animation;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams frames out of raw GIF bytes without going through ImageIO.
+ * Only the blocks needed to play the animation are interpreted: the logical
+ * screen descriptor, color tables, graphic control extensions, the looping
+ * application extension and image data.
+ */
+public class GifDecoder
+{
+	private static final int DEFAULT_FRAME_DELAY_MS = 100;
+	private static final int MIN_FRAME_DELAY_MS = 20;
+	private static final int COLOR_TABLE_SIZE = 256;
+	private static final int MAX_CODE_TABLE_SIZE = 4096;
+	// Largest array most VMs will allocate
+	private static final long MAX_FRAME_PIXELS = Integer.MAX_VALUE - 8;
+	private static final int OPAQUE_BLACK = 0xFF000000;
+
+	private static final int BLOCK_EXTENSION = 0x21;
+	private static final int BLOCK_IMAGE_DESCRIPTOR = 0x2C;
+	private static final int BLOCK_TRAILER = 0x3B;
+	private static final int EXTENSION_GRAPHIC_CONTROL = 0xF9;
+	private static final int EXTENSION_APPLICATION = 0xFF;
+	private static final int APPLICATION_IDENTIFIER_SIZE = 11;
+	private static final int LOOP_SUB_BLOCK_ID = 1;
+	private static final List<String> LOOPING_APPLICATIONS = List.of("NETSCAPE2.0", "ANIMEXTS1.0");
+
+	private static final int[] INTERLACE_START_ROWS = {0, 4, 2, 1};
+	private static final int[] INTERLACE_ROW_STEPS = {8, 8, 4, 2};
+
+	private final byte[] data;
+	private final int width;
+	private final int height;
+	private final int[] globalColorTable;
+	private final int firstBlockPosition;
+
+	private int position;
+
+	private int pendingDelayMs;
+	private int pendingDisposalMethod;
+	private int pendingTransparentIndex;
+	private int playCount = 1;
+
+	private final short[] codePrefixes = new short[MAX_CODE_TABLE_SIZE];
+	private final byte[] codeSuffixes = new byte[MAX_CODE_TABLE_SIZE];
+	private final byte[] pixelStack = new byte[MAX_CODE_TABLE_SIZE + 1];
+
+	public GifDecoder(byte[] data) throws IOException
+	{
+		this.data = data;
+		this.position = 0;
+
+		boolean hasSignature = data.length >= 6 && data[0] == 'G' && data[1] == 'I' && data[2] == 'F';
+		if (!hasSignature)
+		{
+			throw new IOException("Not a GIF file");
+		}
+		this.position = 6;
+
+		int screenWidth = this.readShort();
+		int screenHeight = this.readShort();
+		int packed = this.readUnsigned();
+		this.skip(2); // background color index and pixel aspect ratio
+
+		boolean hasGlobalColorTable = (packed & 0x80) != 0;
+		this.globalColorTable = hasGlobalColorTable ? this.readColorTable(2 << (packed & 0x07)) : null;
+		this.firstBlockPosition = this.position;
+
+		if (screenWidth == 0 || screenHeight == 0)
+		{
+			int[] firstImageSize = this.peekFirstImageSize();
+			screenWidth = firstImageSize[0];
+			screenHeight = firstImageSize[1];
+		}
+
+		if (screenWidth == 0 || screenHeight == 0)
+		{
+			throw new IOException("GIF has no drawable area");
+		}
+
+		this.width = screenWidth;
+		this.height = screenHeight;
+		this.resetGraphicControl();
+	}
+
+	private GifDecoder(GifDecoder source)
+	{
+		this.data = source.data;
+		this.width = source.width;
+		this.height = source.height;
+		this.globalColorTable = source.globalColorTable;
+		this.firstBlockPosition = source.firstBlockPosition;
+		this.position = source.firstBlockPosition;
+		this.resetGraphicControl();
+	}
+
+	/**
+	 * Returns a decoder over the same data with its own read position and code tables,
+	 * so frames can be decompressed on several threads at once.
+	 */
+	public GifDecoder duplicate()
+	{
+		return new GifDecoder(this);
+	}
+
+	public int getWidth()
+	{
+		return this.width;
+	}
+
+	public int getHeight()
+	{
+		return this.height;
+	}
+
+	/**
+	 * Reads the next image in the stream into the given frame, reusing its index buffer when it is large enough.
+	 * Returns false once the trailer or the end of the data is reached.
+	 */
+	public boolean readFrame(GifFrame frame) throws IOException
+	{
+		while (this.position < this.data.length)
+		{
+			int blockType = this.readUnsigned();
+			switch (blockType)
+			{
+				case BLOCK_IMAGE_DESCRIPTOR:
+					this.readImage(frame);
+					return true;
+				case BLOCK_EXTENSION:
+					this.readExtension();
+					break;
+				case BLOCK_TRAILER:
+				default:
+					return false;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Reads the frame starting at an offset reported by {@link #scan()}.
+	 */
+	public boolean readFrameAt(int offset, GifFrame frame) throws IOException
+	{
+		this.position = offset;
+		this.resetGraphicControl();
+		return this.readFrame(frame);
+	}
+
+	public void rewind()
+	{
+		this.position = this.firstBlockPosition;
+		this.resetGraphicControl();
+	}
+
+	/**
+	 * Walks the block structure without decompressing any image data, recording where each
+	 * frame starts and how long it is shown. A truncated last frame is left out, matching
+	 * what {@link #readFrame} can decode. The read position is left unchanged.
+	 */
+	public GifLayout scan()
+	{
+		int savedPosition = this.position;
+		int savedDelayMs = this.pendingDelayMs;
+		int savedDisposalMethod = this.pendingDisposalMethod;
+		int savedTransparentIndex = this.pendingTransparentIndex;
+
+		List<Integer> offsets = new ArrayList<>();
+		List<Integer> delays = new ArrayList<>();
+		String frameViolation = null;
+
+		this.position = this.firstBlockPosition;
+		this.resetGraphicControl();
+		int frameStart = this.position;
+
+		try
+		{
+			boolean reachedEnd = false;
+			while (!reachedEnd && this.position < this.data.length)
+			{
+				int blockType = this.readUnsigned();
+				switch (blockType)
+				{
+					case BLOCK_IMAGE_DESCRIPTOR:
+						frameViolation = this.checkFrameBounds(this.readShort(), this.readShort(), this.readShort(), this.readShort());
+						if (frameViolation != null)
+						{
+							reachedEnd = true;
+							break;
+						}
+
+						int packed = this.readUnsigned();
+						boolean hasLocalColorTable = (packed & 0x80) != 0;
+						this.skip(hasLocalColorTable ? 3 * (2 << (packed & 0x07)) : 0);
+						this.skip(1); // LZW minimum code size
+						this.skipSubBlocks();
+
+						offsets.add(frameStart);
+						delays.add(this.pendingDelayMs);
+						this.resetGraphicControl();
+						frameStart = this.position;
+						break;
+					case BLOCK_EXTENSION:
+						this.readExtension();
+						break;
+					case BLOCK_TRAILER:
+					default:
+						reachedEnd = true;
+						break;
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			// Truncated data, keep the frames that are complete
+		}
+
+		this.position = savedPosition;
+		this.pendingDelayMs = savedDelayMs;
+		this.pendingDisposalMethod = savedDisposalMethod;
+		this.pendingTransparentIndex = savedTransparentIndex;
+
+		return new GifLayout(
+			offsets.stream().mapToInt(Integer::intValue).toArray(),
+			delays.stream().mapToInt(Integer::intValue).toArray(),
+			this.playCount,
+			frameViolation
+		);
+	}
+
+	private void readExtension() throws IOException
+	{
+		int label = this.readUnsigned();
+		if (label == EXTENSION_APPLICATION)
+		{
+			this.readApplicationExtension();
+			return;
+		}
+
+		if (label != EXTENSION_GRAPHIC_CONTROL)
+		{
+			this.skipSubBlocks();
+			return;
+		}
+
+		int blockSize = this.readUnsigned();
+		if (blockSize < 4)
+		{
+			this.skip(blockSize);
+			this.skipSubBlocks();
+			return;
+		}
+
+		int packed = this.readUnsigned();
+		int delayHundredths = this.readShort();
+		int transparentIndex = this.readUnsigned();
+		this.skip(blockSize - 4);
+		this.skipSubBlocks();
+
+		int delayMs = delayHundredths * 10;
+		boolean hasTransparency = (packed & 0x01) != 0;
+
+		// Like browsers, treat near-zero delays as the default instead of spinning through frames
+		this.pendingDelayMs = delayMs >= MIN_FRAME_DELAY_MS ? delayMs : DEFAULT_FRAME_DELAY_MS;
+		this.pendingDisposalMethod = (packed >> 2) & 0x07;
+		this.pendingTransparentIndex = hasTransparency ? transparentIndex : GifFrame.NO_TRANSPARENCY;
+	}
+
+	/**
+	 * Picks up the loop count from a NETSCAPE2.0 extension. Without one the GIF plays once,
+	 * a count of 0 loops forever and any other count repeats the animation that many times.
+	 */
+	private void readApplicationExtension() throws IOException
+	{
+		int blockSize = this.readUnsigned();
+		int identifierStart = this.position;
+		this.skip(blockSize);
+
+		boolean isLoopingExtension = blockSize == APPLICATION_IDENTIFIER_SIZE
+			&& LOOPING_APPLICATIONS.contains(new String(this.data, identifierStart, blockSize, StandardCharsets.US_ASCII));
+
+		int subBlockSize = this.readUnsigned();
+		while (subBlockSize > 0)
+		{
+			int subBlockStart = this.position;
+			this.skip(subBlockSize);
+
+			boolean isLoopSubBlock = isLoopingExtension && subBlockSize >= 3 && this.data[subBlockStart] == LOOP_SUB_BLOCK_ID;
+			if (isLoopSubBlock)
+			{
+				int loopCount = (this.data[subBlockStart + 1] & 0xFF) | ((this.data[subBlockStart + 2] & 0xFF) << 8);
+				this.playCount = loopCount == 0 ? GifLayout.PLAY_FOREVER : loopCount + 1;
+			}
+
+			subBlockSize = this.readUnsigned();
+		}
+	}
+
+	private void readImage(GifFrame frame) throws IOException
+	{
+		frame.x = this.readShort();
+		frame.y = this.readShort();
+		frame.width = this.readShort();
+		frame.height = this.readShort();
+
+		String frameViolation = this.checkFrameBounds(frame.x, frame.y, frame.width, frame.height);
+		if (frameViolation != null)
+		{
+			throw new IOException(frameViolation);
+		}
+
+		int packed = this.readUnsigned();
+		boolean hasLocalColorTable = (packed & 0x80) != 0;
+		boolean isInterlaced = (packed & 0x40) != 0;
+
+		if (hasLocalColorTable)
+		{
+			frame.colorTable = this.readColorTable(2 << (packed & 0x07));
+		}
+		else if (this.globalColorTable != null)
+		{
+			frame.colorTable = this.globalColorTable;
+		}
+		else
+		{
+			frame.colorTable = this.readColorTable(0);
+		}
+
+		boolean isKnownDisposal = this.pendingDisposalMethod <= GifFrame.DISPOSAL_RESTORE_TO_PREVIOUS;
+		frame.delayMs = this.pendingDelayMs;
+		frame.disposalMethod = isKnownDisposal ? this.pendingDisposalMethod : GifFrame.DISPOSAL_NONE;
+		frame.transparentIndex = this.pendingTransparentIndex;
+		this.resetGraphicControl();
+
+		// Bounded by the canvas, which is at most 65535x65535 and so can still overflow an int
+		long framePixels = (long) frame.width * frame.height;
+		if (framePixels > MAX_FRAME_PIXELS)
+		{
+			throw new IOException("GIF frame of " + frame.width + "x" + frame.height + " is too large to decode");
+		}
+
+		int pixelCount = (int) framePixels;
+		if (frame.indices == null || frame.indices.length < pixelCount)
+		{
+			frame.indices = new byte[pixelCount];
+		}
+
+		this.decodeImageData(frame.indices, pixelCount, frame.transparentIndex);
+
+		if (isInterlaced && pixelCount > 0)
+		{
+			GifDecoder.deinterlace(frame.indices, frame.width, frame.height);
+		}
+	}
+
+	/**
+	 * Returns why a frame descriptor cannot be used, or null when the frame lies within the logical
+	 * screen. Checked before anything is sized from the descriptor, so a frame can never cost more
+	 * memory than the canvas that the decode limits were checked against.
+	 */
+	private String checkFrameBounds(int x, int y, int frameWidth, int frameHeight)
+	{
+		boolean isInsideScreen = x + frameWidth <= this.width && y + frameHeight <= this.height;
+		if (isInsideScreen)
+		{
+			return null;
+		}
+
+		return String.format("frame of %dx%d at %d,%d extends past the %dx%d canvas", frameWidth, frameHeight, x, y, this.width, this.height);
+	}
+
+	private void decodeImageData(byte[] indices, int pixelCount, int transparentIndex) throws IOException
+	{
+		int minimumCodeSize = this.readUnsigned();
+		if (minimumCodeSize < 1 || minimumCodeSize > 11)
+		{
+			throw new IOException("Invalid LZW minimum code size: " + minimumCodeSize);
+		}
+
+		int clearCode = 1 << minimumCodeSize;
+		int endCode = clearCode + 1;
+		int nextCode = clearCode + 2;
+		int codeSize = minimumCodeSize + 1;
+		int codeMask = (1 << codeSize) - 1;
+		int previousCode = -1;
+		int firstByte = 0;
+
+		for (int code = 0; code < clearCode; code++)
+		{
+			this.codePrefixes[code] = 0;
+			this.codeSuffixes[code] = (byte) code;
+		}
+
+		int bitBuffer = 0;
+		int bitCount = 0;
+		int blockRemaining = 0;
+		int stackTop = 0;
+		int written = 0;
+		boolean dataEnded = false;
+
+		while (written < pixelCount)
+		{
+			if (stackTop > 0)
+			{
+				indices[written++] = this.pixelStack[--stackTop];
+				continue;
+			}
+
+			while (bitCount < codeSize && !dataEnded)
+			{
+				if (blockRemaining == 0)
+				{
+					blockRemaining = this.readUnsigned();
+					dataEnded = blockRemaining == 0;
+					continue;
+				}
+
+				bitBuffer |= this.readUnsigned() << bitCount;
+				bitCount += 8;
+				blockRemaining--;
+			}
+
+			if (dataEnded)
+			{
+				break;
+			}
+
+			int code = bitBuffer & codeMask;
+			bitBuffer >>>= codeSize;
+			bitCount -= codeSize;
+
+			if (code == clearCode)
+			{
+				nextCode = clearCode + 2;
+				codeSize = minimumCodeSize + 1;
+				codeMask = (1 << codeSize) - 1;
+				previousCode = -1;
+				continue;
+			}
+
+			if (code == endCode)
+			{
+				break;
+			}
+
+			if (previousCode == -1)
+			{
+				if (code >= clearCode)
+				{
+					break;
+				}
+
+				this.pixelStack[stackTop++] = this.codeSuffixes[code];
+				previousCode = code;
+				firstByte = code;
+				continue;
+			}
+
+			int currentCode = code;
+			if (code >= nextCode)
+			{
+				if (code > nextCode)
+				{
+					break;
+				}
+
+				this.pixelStack[stackTop++] = (byte) firstByte;
+				code = previousCode;
+			}
+
+			while (code > endCode)
+			{
+				this.pixelStack[stackTop++] = this.codeSuffixes[code];
+				code = this.codePrefixes[code];
+			}
+
+			firstByte = this.codeSuffixes[code] & 0xFF;
+			this.pixelStack[stackTop++] = (byte) firstByte;
+
+			if (nextCode < MAX_CODE_TABLE_SIZE)
+			{
+				this.codePrefixes[nextCode] = (short) previousCode;
+				this.codeSuffixes[nextCode] = (byte) firstByte;
+				nextCode++;
+
+				boolean codeSizeExhausted = (nextCode & codeMask) == 0;
+				if (codeSizeExhausted && nextCode < MAX_CODE_TABLE_SIZE)
+				{
+					codeSize++;
+					codeMask = (1 << codeSize) - 1;
+				}
+			}
+
+			previousCode = currentCode;
+		}
+
+		if (written < pixelCount)
+		{
+			// Truncated or corrupt data: leave the rest of the frame see-through
+			byte fill = (byte) (transparentIndex >= 0 ? transparentIndex : 0);
+			Arrays.fill(indices, written, pixelCount, fill);
+		}
+
+		if (!dataEnded)
+		{
+			this.skip(blockRemaining);
+			this.skipSubBlocks();
+		}
+	}
+
+	private int[] peekFirstImageSize() throws IOException
+	{
+		int[] size = {0, 0};
+
+		while (this.position < this.data.length)
+		{
+			int blockType = this.readUnsigned();
+			if (blockType == BLOCK_EXTENSION)
+			{
+				this.skip(1);
+				this.skipSubBlocks();
+				continue;
+			}
+
+			if (blockType == BLOCK_IMAGE_DESCRIPTOR)
+			{
+				this.skip(4);
+				size[0] = this.readShort();
+				size[1] = this.readShort();
+			}
+			break;
+		}
+
+		this.position = this.firstBlockPosition;
+		return size;
+	}
+
+	private int[] readColorTable(int entryCount) throws IOException
+	{
+		int[] colorTable = new int[COLOR_TABLE_SIZE];
+		Arrays.fill(colorTable, OPAQUE_BLACK);
+
+		for (int i = 0; i < entryCount; i++)
+		{
+			int red = this.readUnsigned();
+			int green = this.readUnsigned();
+			int blue = this.readUnsigned();
+			colorTable[i] = OPAQUE_BLACK | (red << 16) | (green << 8) | blue;
+		}
+
+		return colorTable;
+	}
+
+	private void resetGraphicControl()
+	{
+		this.pendingDelayMs = DEFAULT_FRAME_DELAY_MS;
+		this.pendingDisposalMethod = GifFrame.DISPOSAL_NONE;
+		this.pendingTransparentIndex = GifFrame.NO_TRANSPARENCY;
+	}
+
+	private void skipSubBlocks() throws IOException
+	{
+		int blockSize = this.readUnsigned();
+		while (blockSize > 0)
+		{
+			this.skip(blockSize);
+			blockSize = this.readUnsigned();
+		}
+	}
+
+	private void skip(int byteCount) throws IOException
+	{
+		if (this.position + byteCount > this.data.length)
+		{
+			throw new EOFException("Unexpected end of GIF data");
+		}
+		this.position += byteCount;
+	}
+
+	private int readShort() throws IOException
+	{
+		int low = this.readUnsigned();
+		int high = this.readUnsigned();
+		return low | (high << 8);
+	}
+
+	private int readUnsigned() throws IOException
+	{
+		if (this.position >= this.data.length)
+		{
+			throw new EOFException("Unexpected end of GIF data");
+		}
+		return this.data[this.position++] & 0xFF;
+	}
+
+	private static void deinterlace(byte[] indices, int width, int height)
+	{
+		byte[] ordered = new byte[width * height];
+		int sourceRow = 0;
+
+		for (int pass = 0; pass < INTERLACE_START_ROWS.length; pass++)
+		{
+			for (int row = INTERLACE_START_ROWS[pass]; row < height; row += INTERLACE_ROW_STEPS[pass])
+			{
+				System.arraycopy(indices, sourceRow * width, ordered, row * width, width);
+				sourceRow++;
+			}
+		}
+
+		System.arraycopy(ordered, 0, indices, 0, ordered.length);
+	}
+}
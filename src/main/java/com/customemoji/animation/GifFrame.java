@@ -0,0 +1,28 @@
+package com.customemoji.animation;
+
+import lombok.Getter;
+
+/**
+ * One undecoded-to-ARGB GIF frame: its palette indices, the color table they
+ * point into, and the graphic control values that apply to it.
+ */
+@Getter
+public class GifFrame
+{
+	public static final int DISPOSAL_NONE = 0;
+	public static final int DISPOSAL_DO_NOT_DISPOSE = 1;
+	public static final int DISPOSAL_RESTORE_TO_BACKGROUND = 2;
+	public static final int DISPOSAL_RESTORE_TO_PREVIOUS = 3;
+
+	public static final int NO_TRANSPARENCY = -1;
+
+	int x;
+	int y;
+	int width;
+	int height;
+	int delayMs;
+	int disposalMethod;
+	int transparentIndex;
+	int[] colorTable;
+	byte[] indices;
+}
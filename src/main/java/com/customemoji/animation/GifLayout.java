@@ -0,0 +1,69 @@
+package com.customemoji.animation;
+
+/**
+ * Frame positions and timing of a GIF, found by {@link GifDecoder#scan()} without decoding any pixels.
+ */
+public class GifLayout
+{
+	public static final int PLAY_FOREVER = 0;
+
+	private final int[] frameOffsets;
+	private final int[] frameDelaysMs;
+	private final int playCount;
+	private final String frameViolation;
+
+	GifLayout(int[] frameOffsets, int[] frameDelaysMs, int playCount, String frameViolation)
+	{
+		this.frameOffsets = frameOffsets;
+		this.frameDelaysMs = frameDelaysMs;
+		this.playCount = playCount;
+		this.frameViolation = frameViolation;
+	}
+
+	public int getFrameCount()
+	{
+		return this.frameOffsets.length;
+	}
+
+	public int getFrameOffset(int frameIndex)
+	{
+		return this.frameOffsets[frameIndex];
+	}
+
+	public int getFrameDelayMs(int frameIndex)
+	{
+		return this.frameDelaysMs[frameIndex];
+	}
+
+	/**
+	 * Number of times the animation is played, or {@link #PLAY_FOREVER}.
+	 */
+	public int getPlayCount()
+	{
+		return this.playCount;
+	}
+
+	/**
+	 * Why a frame descriptor could not be used, or null when every frame fits the canvas.
+	 */
+	public String getFrameViolation()
+	{
+		return this.frameViolation;
+	}
+
+	public long getTotalDurationMs()
+	{
+		long total = 0;
+		for (int delayMs : this.frameDelaysMs)
+		{
+			total += delayMs;
+		}
+		return total;
+	}
+
+	public int getAverageDelayMs()
+	{
+		int frameCount = this.getFrameCount();
+		return frameCount == 0 ? 0 : (int) (this.getTotalDurationMs() / frameCount);
+	}
+}
@@ -0,0 +1,296 @@
+package com.customemoji.animation;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import lombok.Getter;
+
+/**
+ * A finished animation frame kept as a palette plus one byte per pixel.
+ * Frames with more than 256 distinct colors (usually smoothly resized ones)
+ * fall back to a plain ARGB copy. The indices or ARGB values can be moved into
+ * an off-heap buffer with {@link #moveOffHeap}, only the palette stays on the heap.
+ */
+public class IndexedFrame
+{
+	private static final int MAX_PALETTE_SIZE = 256;
+	private static final int COLOR_HASH_SIZE = 1024;
+	private static final int COLOR_HASH_MASK = COLOR_HASH_SIZE - 1;
+	private static final int ARRAY_HEADER_BYTES = 16;
+	private static final int RAW_PIXELS_MARKER = -1;
+	private static final int SERIALIZED_HEADER_BYTES = 4 * Integer.BYTES;
+
+	private final int[] palette;
+	private final byte[] indices;
+	private final int[] pixels;
+	private final ByteBuffer offHeapData;
+
+	@Getter
+	private final int width;
+
+	@Getter
+	private final int height;
+
+	@Getter
+	private final int delayMs;
+
+	private IndexedFrame(int width, int height, int[] palette, byte[] indices, int[] pixels, int delayMs)
+	{
+		this(width, height, palette, indices, pixels, null, delayMs);
+	}
+
+	private IndexedFrame(int width, int height, int[] palette, byte[] indices, int[] pixels, ByteBuffer offHeapData, int delayMs)
+	{
+		this.width = width;
+		this.height = height;
+		this.palette = palette;
+		this.indices = indices;
+		this.pixels = pixels;
+		this.offHeapData = offHeapData;
+		this.delayMs = delayMs;
+	}
+
+	public static IndexedFrame encode(int[] argb, int width, int height, int delayMs)
+	{
+		int pixelCount = width * height;
+		int[] palette = new int[MAX_PALETTE_SIZE];
+		int[] hashColors = new int[COLOR_HASH_SIZE];
+		int[] hashSlots = new int[COLOR_HASH_SIZE];
+		byte[] indices = new byte[pixelCount];
+		int paletteSize = 0;
+
+		int lastColor = 0;
+		int lastIndex = -1;
+
+		for (int i = 0; i < pixelCount; i++)
+		{
+			int color = argb[i];
+			if ((color >>> 24) == 0)
+			{
+				// Every fully transparent pixel looks the same, so they can share one entry
+				color = 0;
+			}
+
+			if (color == lastColor && lastIndex >= 0)
+			{
+				indices[i] = (byte) lastIndex;
+				continue;
+			}
+
+			int slot = IndexedFrame.hash(color) & COLOR_HASH_MASK;
+			int paletteIndex = -1;
+			while (paletteIndex < 0)
+			{
+				int entry = hashSlots[slot];
+				if (entry == 0)
+				{
+					if (paletteSize == MAX_PALETTE_SIZE)
+					{
+						return new IndexedFrame(width, height, null, null, Arrays.copyOf(argb, pixelCount), delayMs);
+					}
+
+					palette[paletteSize] = color;
+					hashColors[slot] = color;
+					paletteIndex = paletteSize;
+					paletteSize++;
+					hashSlots[slot] = paletteSize;
+				}
+				else if (hashColors[slot] == color)
+				{
+					paletteIndex = entry - 1;
+				}
+				else
+				{
+					slot = (slot + 1) & COLOR_HASH_MASK;
+				}
+			}
+
+			indices[i] = (byte) paletteIndex;
+			lastColor = color;
+			lastIndex = paletteIndex;
+		}
+
+		return new IndexedFrame(width, height, Arrays.copyOf(palette, paletteSize), indices, null, delayMs);
+	}
+
+	/**
+	 * Returns a copy of this frame whose pixel data lives in a buffer from {@code pool}.
+	 * The copy must be handed back with {@link #release} once nothing draws it anymore.
+	 */
+	IndexedFrame moveOffHeap(OffHeapFramePool pool)
+	{
+		if (this.offHeapData != null)
+		{
+			return this;
+		}
+
+		if (this.pixels != null)
+		{
+			ByteBuffer buffer = pool.acquire(this.pixels.length * Integer.BYTES);
+			buffer.asIntBuffer().put(this.pixels);
+			return new IndexedFrame(this.width, this.height, null, null, null, buffer, this.delayMs);
+		}
+
+		ByteBuffer buffer = pool.acquire(this.indices.length);
+		buffer.duplicate().put(this.indices);
+		return new IndexedFrame(this.width, this.height, this.palette, null, null, buffer, this.delayMs);
+	}
+
+	boolean isOffHeap()
+	{
+		return this.offHeapData != null;
+	}
+
+	void release(OffHeapFramePool pool)
+	{
+		if (this.offHeapData != null)
+		{
+			pool.release(this.offHeapData);
+		}
+	}
+
+	public void writeTo(int[] destination)
+	{
+		if (this.offHeapData != null)
+		{
+			this.writeOffHeapTo(destination);
+			return;
+		}
+
+		if (this.pixels != null)
+		{
+			System.arraycopy(this.pixels, 0, destination, 0, this.pixels.length);
+			return;
+		}
+
+		int[] colors = this.palette;
+		byte[] colorIndices = this.indices;
+		for (int i = 0; i < colorIndices.length; i++)
+		{
+			destination[i] = colors[colorIndices[i] & 0xFF];
+		}
+	}
+
+	public long getByteSize()
+	{
+		if (this.offHeapData != null)
+		{
+			long paletteBytes = this.palette == null ? 0 : ARRAY_HEADER_BYTES + (long) this.palette.length * Integer.BYTES;
+			return paletteBytes + this.offHeapData.capacity();
+		}
+
+		if (this.pixels != null)
+		{
+			return ARRAY_HEADER_BYTES + (long) this.pixels.length * Integer.BYTES;
+		}
+
+		return 2L * ARRAY_HEADER_BYTES + (long) this.palette.length * Integer.BYTES + this.indices.length;
+	}
+
+	/**
+	 * Number of bytes {@link #serialize} writes for this frame.
+	 */
+	public int getSerializedSize()
+	{
+		int pixelCount = this.width * this.height;
+		if (this.palette == null)
+		{
+			return SERIALIZED_HEADER_BYTES + pixelCount * Integer.BYTES;
+		}
+
+		return SERIALIZED_HEADER_BYTES + this.palette.length * Integer.BYTES + pixelCount;
+	}
+
+	public void serialize(ByteBuffer buffer)
+	{
+		buffer.putInt(this.width);
+		buffer.putInt(this.height);
+		buffer.putInt(this.delayMs);
+
+		if (this.palette == null)
+		{
+			buffer.putInt(RAW_PIXELS_MARKER);
+			int[] argb = this.pixels;
+			if (argb == null)
+			{
+				argb = new int[this.width * this.height];
+				this.writeOffHeapTo(argb);
+			}
+			buffer.asIntBuffer().put(argb);
+			buffer.position(buffer.position() + argb.length * Integer.BYTES);
+			return;
+		}
+
+		buffer.putInt(this.palette.length);
+		buffer.asIntBuffer().put(this.palette);
+		buffer.position(buffer.position() + this.palette.length * Integer.BYTES);
+		if (this.offHeapData != null)
+		{
+			buffer.put(this.offHeapData.duplicate());
+		}
+		else
+		{
+			buffer.put(this.indices);
+		}
+	}
+
+	/**
+	 * Reads a frame written by {@link #serialize}.
+	 *
+	 * @throws IllegalArgumentException if the data is not a valid frame
+	 */
+	public static IndexedFrame deserialize(ByteBuffer buffer)
+	{
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+		int delayMs = buffer.getInt();
+		int paletteSize = buffer.getInt();
+
+		boolean isValidSize = width > 0 && height > 0 && (long) width * height <= buffer.remaining();
+		boolean isValidPalette = paletteSize == RAW_PIXELS_MARKER || (paletteSize > 0 && paletteSize <= MAX_PALETTE_SIZE);
+		if (!isValidSize || !isValidPalette)
+		{
+			throw new IllegalArgumentException("Corrupt frame header");
+		}
+
+		int pixelCount = width * height;
+		if (paletteSize == RAW_PIXELS_MARKER)
+		{
+			int[] pixels = new int[pixelCount];
+			buffer.asIntBuffer().get(pixels);
+			buffer.position(buffer.position() + pixelCount * Integer.BYTES);
+			return new IndexedFrame(width, height, null, null, pixels, delayMs);
+		}
+
+		int[] palette = new int[paletteSize];
+		buffer.asIntBuffer().get(palette);
+		buffer.position(buffer.position() + paletteSize * Integer.BYTES);
+
+		byte[] indices = new byte[pixelCount];
+		buffer.get(indices);
+		return new IndexedFrame(width, height, palette, indices, null, delayMs);
+	}
+
+	private void writeOffHeapTo(int[] destination)
+	{
+		ByteBuffer data = this.offHeapData;
+		if (this.palette == null)
+		{
+			data.asIntBuffer().get(destination, 0, this.width * this.height);
+			return;
+		}
+
+		int[] colors = this.palette;
+		int pixelCount = this.width * this.height;
+		for (int i = 0; i < pixelCount; i++)
+		{
+			destination[i] = colors[data.get(i) & 0xFF];
+		}
+	}
+
+	private static int hash(int color)
+	{
+		int mixed = color * 0x9E3779B1;
+		return mixed ^ (mixed >>> 16);
+	}
+}
@@ -0,0 +1,76 @@
+package com.customemoji.animation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Direct buffers for frame pixels, so large packs do not fill the Java heap with
+ * long-lived arrays. Released buffers are kept for reuse up to a small limit, the
+ * rest are left for the garbage collector to free.
+ */
+class OffHeapFramePool
+{
+	private static final int PAGE_BYTES = 4096;
+	private static final long MAX_RETAINED_BYTES = 16L * 1024 * 1024;
+
+	private final Map<Integer, Deque<ByteBuffer>> freeBuffers = new HashMap<>();
+	private long allocatedBytes;
+	private long retainedBytes;
+
+	/**
+	 * Returns a buffer in native byte order with position 0 and its limit set to {@code size}.
+	 */
+	synchronized ByteBuffer acquire(int size)
+	{
+		int capacity = (size + PAGE_BYTES - 1) / PAGE_BYTES * PAGE_BYTES;
+		Deque<ByteBuffer> free = this.freeBuffers.get(capacity);
+
+		ByteBuffer buffer = free == null ? null : free.poll();
+		if (buffer == null)
+		{
+			buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+		}
+		else
+		{
+			this.retainedBytes -= capacity;
+		}
+
+		this.allocatedBytes += capacity;
+		buffer.clear().limit(size);
+		return buffer;
+	}
+
+	synchronized void release(ByteBuffer buffer)
+	{
+		int capacity = buffer.capacity();
+		this.allocatedBytes -= capacity;
+
+		boolean hasRoom = this.retainedBytes + capacity <= MAX_RETAINED_BYTES;
+		if (hasRoom)
+		{
+			this.freeBuffers.computeIfAbsent(capacity, key -> new ArrayDeque<>()).push(buffer);
+			this.retainedBytes += capacity;
+		}
+	}
+
+	/**
+	 * Drops every buffer kept for reuse.
+	 */
+	synchronized void clear()
+	{
+		this.freeBuffers.clear();
+		this.retainedBytes = 0;
+	}
+
+	/**
+	 * Bytes currently held by frames, not counting buffers kept for reuse.
+	 */
+	synchronized long getAllocatedBytes()
+	{
+		return this.allocatedBytes;
+	}
+}
@@ -0,0 +1,19 @@
+package com.customemoji.event;
+
+import java.util.Map;
+
+import com.customemoji.model.Emoji;
+
+import lombok.Value;
+
+/**
+ * Event fired on the client thread when some emojis were reloaded or removed, for example
+ * after files in the emoji folder changed. Holds the emojis as they were before the change.
+ * It is followed by an {@link AfterEmojisLoaded} with the updated set.
+ */
+@Value
+public class EmojisChanged
+{
+	Map<String, Emoji> replacedEmojis;
+	Map<String, Emoji> removedEmojis;
+}
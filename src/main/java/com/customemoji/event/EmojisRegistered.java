@@ -0,0 +1,19 @@
+package com.customemoji.event;
+
+import java.util.List;
+import java.util.Map;
+
+import com.customemoji.model.Emoji;
+
+import lombok.Value;
+
+/**
+ * Event fired on the client thread each time a batch of emojis has been registered and can
+ * be shown, before loading has finished. The full set still follows in {@link AfterEmojisLoaded}.
+ */
+@Value
+public class EmojisRegistered
+{
+	Map<String, Emoji> emojis;
+	List<String> registeredEmojis;
+}
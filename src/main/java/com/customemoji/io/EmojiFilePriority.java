@@ -3,6 +3,7 @@ package com.customemoji.io;
 import com.customemoji.model.Holiday;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -23,20 +24,23 @@ public class EmojiFilePriority
 	}
 
 	// Returns one file per emoji name: highest rank wins, ties keep the last file
-	public static List<File> resolveWinners(List<File> files, File githubPackFolder, Set<Holiday> activeHolidays)
+	public static List<FileUtils.ScannedFile> resolveWinners(List<FileUtils.ScannedFile> files, File githubPackFolder, Set<Holiday> activeHolidays)
 	{
-		Map<String, File> winnersByName = new HashMap<>();
+		Path githubPackPath = githubPackFolder == null ? null : githubPackFolder.toPath().toAbsolutePath().normalize();
+		Map<Path, Integer> ranksByFolder = new HashMap<>();
+		Map<String, FileUtils.ScannedFile> winnersByName = new HashMap<>();
 		Map<String, Integer> ranksByName = new HashMap<>();
 
-		for (File file : files)
+		for (FileUtils.ScannedFile scanned : files)
 		{
-			String name = FileUtils.getNameWithoutExtension(file);
+			String name = FileUtils.getNameWithoutExtension(scanned.getFile());
 			if (name == null)
 			{
 				continue;
 			}
 
-			int rank = EmojiFilePriority.rankOf(file, githubPackFolder, activeHolidays);
+			// Every file in a folder has the same rank, so each folder is classified once
+			int rank = ranksByFolder.computeIfAbsent(scanned.getFolder(), folder -> EmojiFilePriority.rankOfFolder(folder, githubPackPath, activeHolidays));
 			if (rank == EmojiFilePriority.PRIORITY_EXCLUDED)
 			{
 				continue;
@@ -47,24 +51,19 @@ public class EmojiFilePriority
 
 			if (winsTie)
 			{
-				winnersByName.put(name, file);
+				winnersByName.put(name, scanned);
 				ranksByName.put(name, rank);
 			}
 		}
 
-		List<File> resolved = new ArrayList<>();
+		List<FileUtils.ScannedFile> resolved = new ArrayList<>();
 
-		for (File file : files)
+		for (FileUtils.ScannedFile scanned : files)
 		{
-			String name = FileUtils.getNameWithoutExtension(file);
-			if (name == null)
-			{
-				continue;
-			}
-
-			if (file.equals(winnersByName.get(name)))
+			String name = FileUtils.getNameWithoutExtension(scanned.getFile());
+			if (name != null && winnersByName.get(name) == scanned)
 			{
-				resolved.add(file);
+				resolved.add(scanned);
 			}
 		}
 
@@ -84,17 +83,31 @@ public class EmojiFilePriority
 		return holiday == null || !activeHolidays.contains(holiday);
 	}
 
-	private static int rankOf(File file, File githubPackFolder, Set<Holiday> activeHolidays)
+	private static int rankOfFolder(Path folder, Path githubPackPath, Set<Holiday> activeHolidays)
 	{
-		String path = file.getPath();
+		boolean isSeasonal = false;
+		boolean isAfterSeasonal = false;
+		Holiday holiday = null;
 
-		if (EmojiFilePriority.isInactiveSeasonalPath(path, activeHolidays))
+		for (Path segment : folder)
+		{
+			String folderName = segment.toString();
+			if (isAfterSeasonal && holiday == null)
+			{
+				holiday = EmojiFilePriority.holidayByFolderName(folderName);
+			}
+
+			isAfterSeasonal = EmojiFilePriority.SEASONAL_FOLDER_NAME.equalsIgnoreCase(folderName);
+			isSeasonal |= isAfterSeasonal;
+		}
+
+		boolean isInactiveSeasonal = isSeasonal && (holiday == null || !activeHolidays.contains(holiday));
+		if (isInactiveSeasonal)
 		{
 			return EmojiFilePriority.PRIORITY_EXCLUDED;
 		}
 
-		boolean isSeasonal = EmojiFilePriority.isInSeasonalFolder(path);
-		boolean isLocal = !EmojiFilePriority.isInsideFolder(file, githubPackFolder);
+		boolean isLocal = githubPackPath == null || !folder.toAbsolutePath().normalize().startsWith(githubPackPath);
 		int sourceRank = isLocal ? EmojiFilePriority.PRIORITY_LOCAL : EmojiFilePriority.PRIORITY_GITHUB;
 		int seasonalRank = isSeasonal ? EmojiFilePriority.PRIORITY_SEASONAL : 0;
 
@@ -153,17 +166,6 @@ public class EmojiFilePriority
 		return null;
 	}
 
-	private static boolean isInsideFolder(File file, File folder)
-	{
-		if (folder == null)
-		{
-			return false;
-		}
-
-		return file.toPath().toAbsolutePath().normalize()
-				   .startsWith(folder.toPath().toAbsolutePath().normalize());
-	}
-
 	private static String[] pathSegments(String path)
 	{
 		return path.split("[\\\\/]");
@@ -5,16 +5,24 @@ import javax.inject.Singleton;
 
 import com.customemoji.CustomEmojiConfig;
 import com.customemoji.PluginUtils;
+import com.customemoji.animation.DecodeLimits;
 import com.customemoji.event.AfterEmojisLoaded;
 import com.customemoji.event.BeforeEmojisLoaded;
 import com.customemoji.event.LoadingProgress;
 import com.customemoji.event.LoadingProgress.LoadingStage;
 import com.customemoji.event.EmojiStateChanged;
+import com.customemoji.event.EmojisChanged;
+import com.customemoji.event.EmojisRegistered;
+import com.customemoji.event.GitHubDownloadCompleted;
+import com.customemoji.event.GitHubDownloadStarted;
 import com.customemoji.event.ReloadEmojisRequested;
 import com.customemoji.model.Emoji;
 import com.customemoji.model.EmojiDto;
 import com.customemoji.model.Lifecycle;
+import com.customemoji.model.StaticImageSource;
+import com.customemoji.service.ChatIconPool;
 import com.customemoji.service.EmojiStateManager;
+import com.customemoji.service.EmojiUsageRecorder;
 import com.customemoji.service.SeasonalEmojiManager;
 
 import lombok.Getter;
@@ -24,22 +32,38 @@ import net.runelite.client.callback.ClientThread;
 import net.runelite.client.eventbus.EventBus;
 import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.events.ConfigChanged;
-import net.runelite.client.game.ChatIconManager;
 
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 
 import com.google.common.collect.ImmutableSet;
 
@@ -50,6 +74,12 @@ public class EmojiLoader implements Lifecycle
 	public static final File EMOJIS_FOLDER = RuneLite.RUNELITE_DIR.toPath().resolve("emojis").toFile();
 
 	private static final Set<String> SUPPORTED_IMAGE_EXTENSIONS = ImmutableSet.of("png", "jpg", "jpeg", "gif");
+	private static final int MAX_DECODE_THREADS = 4;
+	private static final File MANIFEST_FILE = new File(EMOJIS_FOLDER, ".cache/manifest.bin");
+	private static final long FOLDER_CHANGE_DEBOUNCE_MS = 500;
+	private static final long ORIGINALS_BUDGET_BYTES = 32L * 1024 * 1024;
+	private static final long STATIC_IMAGES_BUDGET_BYTES = 16L * 1024 * 1024;
+	private static final long REGISTRATION_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
 
 	public static boolean isSupportedImageFormat(File file)
 	{
@@ -68,7 +98,7 @@ public class EmojiLoader implements Lifecycle
 	private ClientThread clientThread;
 
 	@Inject
-	private ChatIconManager chatIconManager;
+	private ChatIconPool chatIconPool;
 
 	@Inject
 	private CustomEmojiConfig config;
@@ -79,6 +109,9 @@ public class EmojiLoader implements Lifecycle
 	@Inject
 	private SeasonalEmojiManager seasonalEmojiManager;
 
+	@Inject
+	private EmojiUsageRecorder usageRecorder;
+
 	@Inject
 	private EventBus eventBus;
 
@@ -90,12 +123,24 @@ public class EmojiLoader implements Lifecycle
 
 	public final AtomicBoolean isLoading = new AtomicBoolean(false);
 
+	private final EmojiManifest manifest = new EmojiManifest(MANIFEST_FILE, EMOJIS_FOLDER);
+	private final AtomicInteger manifestHits = new AtomicInteger();
+	private final OriginalImageCache originals = new OriginalImageCache(ORIGINALS_BUDGET_BYTES);
+	private final StaticImageCache staticImages = new StaticImageCache(STATIC_IMAGES_BUDGET_BYTES);
+	private final AtomicInteger nextEmojiId = new AtomicInteger();
+	private final FolderWatcher folderWatcher = new FolderWatcher(EMOJIS_FOLDER, FOLDER_CHANGE_DEBOUNCE_MS, "CustomEmoji-EmojiWatcher", this::onFolderChanged);
+
+	private volatile boolean isDownloadInProgress;
+
 	private ExecutorService executor;
+	private volatile ForkJoinPool decodePool;
 
 	@Override
 	public void startUp()
 	{
 		this.firstTimeSetup();
+		int decodeThreads = Math.max(1, Math.min(MAX_DECODE_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+		this.decodePool = new ForkJoinPool(decodeThreads, this::createDecoderThread, null, false);
 		this.executor = Executors.newSingleThreadExecutor(r ->
 		{
 			Thread thread = new Thread(r, "CustomEmoji-Loader");
@@ -104,18 +149,32 @@ public class EmojiLoader implements Lifecycle
 		});
 		this.eventBus.register(this);
 		this.executor.submit(() -> this.loadAllEmojis(false));
+		this.folderWatcher.start();
 	}
 
 	@Override
 	public void shutDown()
 	{
+		this.folderWatcher.stop();
 		this.eventBus.unregister(this);
+		// A load in progress has only registered part of the emojis
+		if (!this.isLoading.get())
+		{
+			this.saveManifest();
+		}
 		this.emojis.clear();
+		this.originals.clear();
+		this.staticImages.clear();
 		if (this.executor != null)
 		{
 			this.executor.shutdownNow();
 			this.executor = null;
 		}
+		if (this.decodePool != null)
+		{
+			this.decodePool.shutdownNow();
+			this.decodePool = null;
+		}
 	}
 
 	private void firstTimeSetup()
@@ -144,10 +203,20 @@ public class EmojiLoader implements Lifecycle
 			return;
 		}
 
-		boolean isMaxImageHeightKey = CustomEmojiConfig.KEY_MAX_IMAGE_HEIGHT.equals(event.getKey());
-		if (isMaxImageHeightKey)
+		switch (event.getKey())
 		{
-			this.executor.submit(() -> this.loadAllEmojis(true));
+			case CustomEmojiConfig.KEY_MAX_IMAGE_HEIGHT:
+				this.executor.submit(this::resizeAllEmojis);
+				break;
+			case CustomEmojiConfig.KEY_MAX_CANVAS_MEGAPIXELS:
+			case CustomEmojiConfig.KEY_MAX_ANIMATION_FRAMES:
+			case CustomEmojiConfig.KEY_MAX_DECODED_ANIMATION_SIZE:
+				// Originals were decoded under the old limits
+				this.originals.clear();
+				this.executor.submit(() -> this.loadAllEmojis(true));
+				break;
+			default:
+				break;
 		}
 	}
 
@@ -162,6 +231,18 @@ public class EmojiLoader implements Lifecycle
 		this.executor.submit(() -> this.loadAllEmojis(event.isForceReload()));
 	}
 
+	@Subscribe
+	public void onGitHubDownloadStarted(GitHubDownloadStarted event)
+	{
+		this.isDownloadInProgress = true;
+	}
+
+	@Subscribe
+	public void onGitHubDownloadCompleted(GitHubDownloadCompleted event)
+	{
+		this.isDownloadInProgress = false;
+	}
+
 	@Subscribe
 	public void onEmojiStateChanged(EmojiStateChanged event)
 	{
@@ -186,7 +267,8 @@ public class EmojiLoader implements Lifecycle
 			return;
 		}
 
-		EmojiDto dto = this.buildEmojiDto(emojiName, existing.getFile());
+		File file = existing.getFile();
+		EmojiDto dto = this.buildEmojiDto(emojiName, file, file.length(), file.lastModified());
 		if (dto == null)
 		{
 			return;
@@ -211,6 +293,8 @@ public class EmojiLoader implements Lifecycle
 
 		this.isLoading.set(true);
 		this.errors.clear();
+		this.manifestHits.set(0);
+		long startNanos = System.nanoTime();
 
 		try
 		{
@@ -220,60 +304,54 @@ public class EmojiLoader implements Lifecycle
 				return;
 			}
 
-			List<File> allFiles = FileUtils.flattenFolder(EMOJIS_FOLDER, EmojiLoader::isSupportedImageFormat);
-			List<File> files = EmojiFilePriority.resolveWinners(
-				allFiles,
-				GitHubEmojiDownloader.GITHUB_PACK_FOLDER,
-				this.seasonalEmojiManager.activeHolidays()
-			);
-			int totalFiles = files.size();
+			Map<File, FileUtils.ScannedFile> scannedFiles = this.listEmojiFiles();
+			List<File> files = new ArrayList<>(scannedFiles.keySet());
+			this.sortByPrewarmOrder(files);
+			this.manifest.loadIfNeeded();
 
 			Set<String> namesOnDisk = new HashSet<>();
-			List<EmojiDto> loadedDtos = new ArrayList<>();
-			for (int i = 0; i < files.size(); i++)
+			for (File file : files)
 			{
-				File file = files.get(i);
-				this.eventBus.post(new LoadingProgress(LoadingStage.LOADING_IMAGES, totalFiles, i + 1, file.getName()));
-
 				String emojiName = FileUtils.getNameWithoutExtension(file);
 				if (emojiName != null)
 				{
 					namesOnDisk.add(emojiName);
 				}
-
-				EmojiDto dto = this.loadEmojiData(file, forceReload);
-				if (dto != null && dto.getStaticImage() != null)
-				{
-					loadedDtos.add(dto);
-				}
 			}
 
-			log.debug("Loaded {} emoji images, registering with ChatIconManager", loadedDtos.size());
-
+			// Emojis are registered in usage order while later files are still decoding
 			CountDownLatch latch = new CountDownLatch(1);
-			this.clientThread.invokeLater(() ->
+			RegistrationTask registration = new RegistrationTask((previous, emoji) -> {}, () ->
 			{
-				try
-				{
-					for (int i = 0; i < loadedDtos.size(); i++)
-					{
-						EmojiDto dto = loadedDtos.get(i);
-						Emoji emoji = this.registerEmoji(dto);
-						if (emoji != null)
-						{
-							this.emojis.put(emoji.getText(), emoji);
-						}
-					}
-
-					this.emojis.keySet().removeIf(name -> !namesOnDisk.contains(name));
-				}
-				finally
+				Map<String, Emoji> removed = new HashMap<>(this.emojis);
+				removed.keySet().removeAll(namesOnDisk);
+				this.emojis.keySet().removeAll(removed.keySet());
+				if (!removed.isEmpty())
 				{
-					latch.countDown();
+					this.eventBus.post(new EmojisChanged(Collections.emptyMap(), removed));
 				}
+				latch.countDown();
 			});
+			this.clientThread.invokeLater(registration);
+
+			try
+			{
+				this.decodeAll(files, file -> this.loadEmojiData(scannedFiles.get(file), forceReload), registration::add);
+			}
+			finally
+			{
+				registration.finishInput();
+			}
 
 			latch.await();
+
+			this.manifest.save(new HashSet<>(files));
+			log.info("Loaded {} emojis in {} ms, {} of them from the manifest", this.emojis.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), this.manifestHits.get());
+		}
+		catch (InterruptedException e)
+		{
+			log.debug("Emoji loading cancelled");
+			Thread.currentThread().interrupt();
 		}
 		catch (Exception e)
 		{
@@ -288,59 +366,358 @@ public class EmojiLoader implements Lifecycle
 		}
 	}
 
-	private Emoji registerEmoji(EmojiDto dto)
+	private void onFolderChanged()
+	{
+		ExecutorService currentExecutor = this.executor;
+		boolean isRunning = currentExecutor != null && !currentExecutor.isShutdown();
+		// A download reloads everything once it completes
+		if (isRunning && !this.isDownloadInProgress)
+		{
+			currentExecutor.submit(this::applyFolderChanges);
+		}
+	}
+
+	/**
+	 * Brings the loaded emojis in line with the folder after files were added, changed or
+	 * removed. Only changed files are decoded, and only their emojis are re-registered.
+	 */
+	private void applyFolderChanges()
+	{
+		if (!EMOJIS_FOLDER.isDirectory())
+		{
+			return;
+		}
+
+		Map<File, FileUtils.ScannedFile> scannedFiles = this.listEmojiFiles();
+		Set<String> namesOnDisk = new HashSet<>();
+		List<EmojiDto> changedDtos = new ArrayList<>();
+		for (FileUtils.ScannedFile scanned : scannedFiles.values())
+		{
+			String emojiName = FileUtils.getNameWithoutExtension(scanned.getFile());
+			if (emojiName != null)
+			{
+				namesOnDisk.add(emojiName);
+			}
+
+			// Unchanged files are skipped without being read
+			EmojiDto dto = this.loadEmojiData(scanned, false);
+			if (dto != null)
+			{
+				changedDtos.add(dto);
+			}
+		}
+
+		Map<String, Emoji> removed = new HashMap<>();
+		for (Emoji emoji : this.emojis.values())
+		{
+			if (!namesOnDisk.contains(emoji.getText()))
+			{
+				removed.put(emoji.getText(), emoji);
+				this.originals.remove(emoji.getFile());
+			}
+		}
+
+		if (changedDtos.isEmpty() && removed.isEmpty())
+		{
+			return;
+		}
+
+		log.debug("Emoji folder changed: {} added or updated, {} removed", changedDtos.size(), removed.size());
+		this.registerChanges(changedDtos, removed);
+		this.manifest.save(new HashSet<>(scannedFiles.keySet()));
+	}
+
+	/**
+	 * Rebuilds the static images of resized emojis after the max height changed. Originals
+	 * come from memory where possible, only files that were never decoded since the last
+	 * reload or did not fit the originals budget are read again.
+	 */
+	private void resizeAllEmojis()
 	{
+		Map<File, Emoji> resizedByFile = new HashMap<>();
+		for (Emoji emoji : this.emojis.values())
+		{
+			if (this.emojiStateManager.isResizingEnabled(emoji.getText()))
+			{
+				resizedByFile.put(emoji.getFile(), emoji);
+			}
+		}
+
+		if (resizedByFile.isEmpty())
+		{
+			return;
+		}
+
 		try
 		{
-			Emoji existing = this.emojis.get(dto.getText());
+			long startNanos = System.nanoTime();
+			List<File> files = new ArrayList<>(resizedByFile.keySet());
+			List<EmojiDto> resizedDtos = new ArrayList<>();
+			this.decodeAll(files, file ->
+			{
+				Emoji emoji = resizedByFile.get(file);
+				return this.buildEmojiDto(emoji.getText(), file, file.length(), emoji.getLastModified());
+			}, resizedDtos::add);
+			this.eventBus.post(new LoadingProgress(LoadingStage.COMPLETE, 0, 0, null));
 
-			if (existing != null)
+			log.debug("Resized {} emojis in {} ms", resizedDtos.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+			this.registerChanges(resizedDtos, Collections.emptyMap());
+		}
+		catch (InterruptedException e)
+		{
+			log.debug("Emoji resizing cancelled");
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e)
+		{
+			log.error("Error resizing emojis", e);
+		}
+	}
+
+	/**
+	 * Registers changed emojis on the client thread, keeping the ids of the ones they replace.
+	 */
+	private void registerChanges(List<EmojiDto> changedDtos, Map<String, Emoji> removed)
+	{
+		Map<String, Emoji> replaced = new HashMap<>();
+		List<String> added = new ArrayList<>();
+		BiConsumer<Emoji, Emoji> onRegistered = (previous, emoji) ->
+		{
+			if (previous != null)
 			{
-				// Reuse existing IDs (swapped due to iconId/index naming mismatch in toEmoji)
-				dto.setIconId(existing.getIndex());
-				dto.setIndex(existing.getIconId());
+				replaced.put(previous.getText(), previous);
 			}
 			else
 			{
-				Integer iconId = this.chatIconManager.reserveChatIcon();
-				Integer index = this.chatIconManager.chatIconIndex(iconId);
-				dto.setIconId(iconId);
-				dto.setIndex(index);
+				added.add(emoji.getText());
 			}
+		};
+
+		this.clientThread.invokeLater(new RegistrationTask(changedDtos, onRegistered, () ->
+		{
+			this.emojis.keySet().removeAll(removed.keySet());
+			this.eventBus.post(new EmojisChanged(replaced, removed));
+			this.eventBus.post(new AfterEmojisLoaded(this.emojis, added));
+		}));
+	}
+
+	/**
+	 * Registers emojis a few milliseconds per client tick, so loading thousands of them does
+	 * not freeze the game. Emojis can be added while earlier ones are being registered, and
+	 * each slice is published as soon as it has run.
+	 */
+	private class RegistrationTask implements BooleanSupplier
+	{
+		private final Queue<EmojiDto> pending = new ConcurrentLinkedQueue<>();
+		private final BiConsumer<Emoji, Emoji> onRegistered;
+		private final Runnable onComplete;
+		private volatile boolean isInputComplete;
+		private int registeredCount;
+		private int sliceCount;
+		private long maxSliceNanos;
+
+		RegistrationTask(BiConsumer<Emoji, Emoji> onRegistered, Runnable onComplete)
+		{
+			this.onRegistered = onRegistered;
+			this.onComplete = onComplete;
+		}
 
-			BufferedImage placeholderImage = new BufferedImage(
-				dto.getDimension().width,
-				dto.getDimension().height,
-				BufferedImage.TYPE_INT_ARGB
-			);
+		RegistrationTask(List<EmojiDto> dtos, BiConsumer<Emoji, Emoji> onRegistered, Runnable onComplete)
+		{
+			this(onRegistered, onComplete);
+			this.pending.addAll(dtos);
+			this.finishInput();
+		}
 
-			this.chatIconManager.updateChatIcon(dto.getIconId(), placeholderImage);
+		void add(EmojiDto dto)
+		{
+			this.pending.add(dto);
+		}
 
-			if (dto.isZeroWidth())
+		/**
+		 * Marks that no more emojis will be added, letting the task complete once the queue is empty.
+		 */
+		void finishInput()
+		{
+			this.isInputComplete = true;
+		}
+
+		@Override
+		public boolean getAsBoolean()
+		{
+			// Read before draining, so an emoji added just before the flag was set is not missed
+			boolean isLastSlice = this.isInputComplete;
+			long startNanos = System.nanoTime();
+			List<String> registeredNames = new ArrayList<>();
+			try
 			{
-				if (existing != null && existing.hasZeroWidthId())
+				EmojiDto dto;
+				while (System.nanoTime() - startNanos < REGISTRATION_SLICE_NANOS && (dto = this.pending.poll()) != null)
 				{
-					dto.setZeroWidthIconId(existing.getZeroWidthIndex());
-					dto.setZeroWidthIndex(existing.getZeroWidthIconId());
+					Emoji previous = EmojiLoader.this.emojis.get(dto.getText());
+					Emoji emoji = EmojiLoader.this.registerEmoji(dto);
+					if (emoji != null)
+					{
+						EmojiLoader.this.emojis.put(emoji.getText(), emoji);
+						registeredNames.add(emoji.getText());
+						this.onRegistered.accept(previous, emoji);
+					}
 				}
-				else
+			}
+			catch (RuntimeException e)
+			{
+				// The loader may be waiting on completion, so give up on the rest instead of retrying forever
+				log.error("Error registering emojis", e);
+				this.pending.clear();
+				isLastSlice = true;
+			}
+
+			if (!registeredNames.isEmpty())
+			{
+				this.registeredCount += registeredNames.size();
+				this.sliceCount++;
+				EmojiLoader.this.eventBus.post(new EmojisRegistered(EmojiLoader.this.emojis, registeredNames));
+				// Subscribers run within this tick too, so their work counts toward the stall
+				this.maxSliceNanos = Math.max(this.maxSliceNanos, System.nanoTime() - startNanos);
+			}
+
+			boolean isComplete = isLastSlice && this.pending.isEmpty();
+			if (isComplete)
+			{
+				log.debug("Registered {} emojis over {} client ticks, longest stall {} ms", this.registeredCount, this.sliceCount, TimeUnit.NANOSECONDS.toMillis(this.maxSliceNanos));
+				this.onComplete.run();
+			}
+			return isComplete;
+		}
+	}
+
+	private void saveManifest()
+	{
+		Set<File> files = new HashSet<>();
+		for (Emoji emoji : this.emojis.values())
+		{
+			files.add(emoji.getFile());
+		}
+		this.manifest.save(files);
+	}
+
+	/**
+	 * Returns the files that win for their emoji name, in scan order, with the attributes read while scanning.
+	 */
+	private Map<File, FileUtils.ScannedFile> listEmojiFiles()
+	{
+		long startNanos = System.nanoTime();
+		List<FileUtils.ScannedFile> allFiles = FileUtils.scanFolder(EMOJIS_FOLDER, EmojiLoader::isSupportedImageFormat, this.decodePool);
+		List<FileUtils.ScannedFile> winners = EmojiFilePriority.resolveWinners(
+			allFiles,
+			GitHubEmojiDownloader.GITHUB_PACK_FOLDER,
+			this.seasonalEmojiManager.activeHolidays()
+		);
+
+		Map<File, FileUtils.ScannedFile> scannedFiles = new LinkedHashMap<>();
+		for (FileUtils.ScannedFile scanned : winners)
+		{
+			scannedFiles.put(scanned.getFile(), scanned);
+		}
+		log.debug("Scanned {} emoji files in {} ms", allFiles.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+		return scannedFiles;
+	}
+
+	/**
+	 * Decodes the files on the decode pool. Results are handed to {@code onDecoded} in the
+	 * order of {@code files}, so icons are registered the same way however the work was split.
+	 */
+	private void decodeAll(List<File> files, Function<File, EmojiDto> decoder, Consumer<EmojiDto> onDecoded) throws InterruptedException, ExecutionException
+	{
+		ForkJoinPool pool = this.decodePool;
+		int totalFiles = files.size();
+		AtomicInteger decodedCount = new AtomicInteger();
+
+		List<Future<EmojiDto>> pending = new ArrayList<>(totalFiles);
+		for (File file : files)
+		{
+			pending.add(pool.submit(() ->
+			{
+				EmojiDto dto = decoder.apply(file);
+				this.eventBus.post(new LoadingProgress(LoadingStage.LOADING_IMAGES, totalFiles, decodedCount.incrementAndGet(), file.getName()));
+				return dto;
+			}));
+		}
+
+		try
+		{
+			for (Future<EmojiDto> future : pending)
+			{
+				EmojiDto dto = future.get();
+				if (dto != null)
 				{
-					Integer zeroWidthIconId = this.chatIconManager.reserveChatIcon();
-					Integer zeroWidthIndex = this.chatIconManager.chatIconIndex(zeroWidthIconId);
-					dto.setZeroWidthIconId(zeroWidthIconId);
-					dto.setZeroWidthIndex(zeroWidthIndex);
+					onDecoded.accept(dto);
 				}
+			}
+		}
+		finally
+		{
+			// Stops queued work when loading is cancelled or a decode failed
+			for (Future<EmojiDto> future : pending)
+			{
+				future.cancel(false);
+			}
+		}
+	}
 
-				BufferedImage zeroWidthPlaceholder = new BufferedImage(
-					1,
-					dto.getDimension().height,
-					BufferedImage.TYPE_INT_ARGB
-				);
+	private ForkJoinWorkerThread createDecoderThread(ForkJoinPool pool)
+	{
+		ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+		thread.setName("CustomEmoji-ImageDecoder-" + thread.getPoolIndex());
+		thread.setDaemon(true);
+		// Plugin classes are not visible through the default context class loader of pool threads
+		thread.setContextClassLoader(EmojiLoader.class.getClassLoader());
+		return thread;
+	}
 
-				this.chatIconManager.updateChatIcon(dto.getZeroWidthIconId(), zeroWidthPlaceholder);
+	/**
+	 * Moves the emojis the player is most likely to see to the front, keeping the rest in their original order.
+	 */
+	private void sortByPrewarmOrder(List<File> files)
+	{
+		List<String> prewarmOrder = this.usageRecorder.getPrewarmOrder();
+		Map<String, Integer> ranks = new HashMap<>();
+		for (int i = 0; i < prewarmOrder.size(); i++)
+		{
+			ranks.put(prewarmOrder.get(i), i);
+		}
+
+		files.sort(Comparator.comparingInt(file ->
+		{
+			String emojiName = FileUtils.getNameWithoutExtension(file);
+			return emojiName == null ? Integer.MAX_VALUE : ranks.getOrDefault(emojiName, Integer.MAX_VALUE);
+		}));
+	}
+
+	private Emoji registerEmoji(EmojiDto dto)
+	{
+		try
+		{
+			Emoji existing = this.emojis.get(dto.getText());
+
+			// Chat icon slots are assigned on first use, here the emoji only gets a stable id.
+			// Setters are swapped due to the iconId/index naming mismatch in toEmoji.
+			int emojiId = existing != null ? existing.getIndex() : this.nextEmojiId.getAndIncrement();
+			dto.setIconId(emojiId);
+			dto.setIndex(-1);
+
+			if (dto.isZeroWidth())
+			{
+				dto.setZeroWidthIconId(emojiId);
+				dto.setZeroWidthIndex(-1);
 			}
 
-			return dto.toEmoji();
+			Emoji emoji = dto.toEmoji();
+			if (existing != null)
+			{
+				this.chatIconPool.updateEmoji(emoji);
+			}
+			return emoji;
 		}
 		catch (Exception e)
 		{
@@ -349,14 +726,18 @@ public class EmojiLoader implements Lifecycle
 		}
 	}
 
-	private void recordError(String message)
+	/**
+	 * Logs the message and keeps it for the {@code emojierror} command until the next reload.
+	 */
+	public void recordError(String message)
 	{
 		log.error(message);
 		this.errors.add(message);
 	}
 
-	private EmojiDto loadEmojiData(File file, boolean forceReload)
+	private EmojiDto loadEmojiData(FileUtils.ScannedFile scanned, boolean forceReload)
 	{
+		File file = scanned.getFile();
 		int extension = file.getName().lastIndexOf('.');
 
 		if (extension < 0)
@@ -366,7 +747,7 @@ public class EmojiLoader implements Lifecycle
 		}
 
 		String name = file.getName().substring(0, extension).toLowerCase();
-		long fileModified = file.lastModified();
+		long fileModified = scanned.getLastModified();
 
 		Emoji existingEmoji = this.emojis.get(name);
 
@@ -378,43 +759,245 @@ public class EmojiLoader implements Lifecycle
 			return null;
 		}
 
-		return this.buildEmojiDto(name, file);
+		if (!forceReload)
+		{
+			boolean shouldResize = this.emojiStateManager.isResizingEnabled(name);
+			EmojiManifest.Entry entry = this.manifest.find(file, scanned.getSize(), fileModified, this.config.maxImageHeight(), shouldResize);
+			if (entry != null)
+			{
+				this.manifestHits.incrementAndGet();
+				if (entry.getDemotionReason() != null)
+				{
+					this.reportDemotion(name, entry.getDemotionReason());
+				}
+				LazyStaticImage staticImage = new LazyStaticImage(name, file, fileModified, this.config.maxImageHeight(), shouldResize);
+				return this.createDto(name, file, fileModified, entry.getDimension(), entry.isAnimated(), staticImage);
+			}
+		}
+
+		return this.buildEmojiDto(name, file, scanned.getSize(), fileModified);
 	}
 
-	private EmojiDto buildEmojiDto(String name, File file)
+	private EmojiDto buildEmojiDto(String name, File file, long size, long lastModified)
 	{
-		BufferedImage imageResult = FileUtils.loadImage(file);
+		boolean shouldResize = this.emojiStateManager.isResizingEnabled(name);
+		OriginalImageCache.Original original = shouldResize ? this.originals.get(file, lastModified) : null;
+		if (original == null)
+		{
+			original = this.decodeOriginal(name, file, lastModified, true);
+			if (original == null)
+			{
+				return null;
+			}
+
+			if (shouldResize)
+			{
+				this.keepOriginal(file, original);
+			}
+		}
 
-		if (imageResult == null)
+		try
+		{
+			int maxHeight = this.config.maxImageHeight();
+			BufferedImage image = shouldResize ? PluginUtils.resizeImage(original.getImage(), maxHeight) : original.getImage();
+			Dimension dimension = new Dimension(image.getWidth(), image.getHeight());
+			this.manifest.put(file, size, lastModified, maxHeight, shouldResize, original.isAnimated(), dimension, original.getDemotionReason());
+
+			LazyStaticImage staticImage = new LazyStaticImage(name, file, lastModified, maxHeight, shouldResize);
+			this.staticImages.prime(staticImage, image);
+			return this.createDto(name, file, lastModified, dimension, original.isAnimated(), staticImage);
+		}
+		catch (RuntimeException e)
 		{
-			this.recordError("Failed to load image for emoji: " + name);
+			this.recordError("Failed to process image for emoji: " + name);
 			return null;
 		}
+	}
 
-		try
+	/**
+	 * Only resized emojis change with the max height, and none is ever taller than the slider
+	 * allows, so their originals are kept at that height at most.
+	 */
+	private void keepOriginal(File file, OriginalImageCache.Original original)
+	{
+		BufferedImage bounded = PluginUtils.resizeImage(original.getImage(), CustomEmojiConfig.MAX_IMAGE_HEIGHT_LIMIT);
+		this.originals.put(file, new OriginalImageCache.Original(original.getLastModified(), original.isAnimated(), bounded, original.getDemotionReason()));
+	}
+
+	private OriginalImageCache.Original decodeOriginal(String name, File file, long lastModified, boolean shouldReportErrors)
+	{
+		DecodeLimits limits = DecodeLimits.fromConfig(this.config);
+		FileUtils.ImageProbe probe = FileUtils.probeImage(file, limits.getMaxCanvasPixels());
+
+		if (probe == null)
 		{
-			boolean shouldResize = this.emojiStateManager.isResizingEnabled(name);
-			boolean isAnimated = PluginUtils.isAnimatedGif(file);
+			if (shouldReportErrors)
+			{
+				this.recordError("Failed to load image for emoji: " + name);
+			}
+			return null;
+		}
 
-			BufferedImage image = shouldResize ? PluginUtils.resizeImage(imageResult, this.config.maxImageHeight()) : imageResult;
-			Dimension dimension = new Dimension(image.getWidth(), image.getHeight());
+		Dimension canvas = probe.getDimension();
+		String limitViolation = limits.checkCanvas(canvas.width, canvas.height);
+		boolean isAnimated = probe.isAnimated() && limitViolation == null;
+		String demotionReason = null;
+		if (limitViolation != null)
+		{
+			demotionReason = (probe.isAnimated() ? "as a static image: " : "downsampled: ") + limitViolation;
+			if (shouldReportErrors)
+			{
+				this.reportDemotion(name, demotionReason);
+			}
+		}
+
+		return new OriginalImageCache.Original(lastModified, isAnimated, probe.getFirstImage(), demotionReason);
+	}
+
+	private void reportDemotion(String name, String demotionReason)
+	{
+		this.recordError("Showing emoji " + name + " " + demotionReason);
+	}
+
+	private EmojiDto createDto(String name, File file, long lastModified, Dimension dimension, boolean isAnimated, LazyStaticImage staticImage)
+	{
+		boolean isZeroWidth = name.endsWith("00");
+
+		return EmojiDto.builder()
+					   .text(name)
+					   .file(file)
+					   .dimension(dimension)
+					   .lastModified(lastModified)
+					   .staticImageSource(staticImage)
+					   .isAnimated(isAnimated)
+					   .isZeroWidth(isZeroWidth)
+					   .build();
+	}
 
-			boolean isZeroWidth = name.endsWith("00");
+	/**
+	 * Decodes and resizes a static image when it is first shown, reusing a cached original when
+	 * there is one. Runs on the decode pool, for renderers and the emoji panel alike.
+	 */
+	private BufferedImage materializeStaticImage(LazyStaticImage staticImage)
+	{
+		try
+		{
+			OriginalImageCache.Original original = staticImage.isResized ? this.originals.get(staticImage.file, staticImage.lastModified) : null;
+			if (original == null)
+			{
+				// Problems with the file were already reported when it was loaded
+				original = this.decodeOriginal(staticImage.name, staticImage.file, staticImage.lastModified, false);
+				if (original == null)
+				{
+					return null;
+				}
+
+				if (staticImage.isResized)
+				{
+					this.keepOriginal(staticImage.file, original);
+				}
+			}
 
-			return EmojiDto.builder()
-						   .text(name)
-						   .file(file)
-						   .dimension(dimension)
-						   .lastModified(file.lastModified())
-						   .staticImage(image)
-						   .isAnimated(isAnimated)
-						   .isZeroWidth(isZeroWidth)
-						   .build();
+			BufferedImage image = original.getImage();
+			return staticImage.isResized ? PluginUtils.resizeImage(image, staticImage.maxHeight) : image;
 		}
 		catch (RuntimeException e)
 		{
-			this.recordError("Failed to process image for emoji: " + name);
+			log.debug("Failed to materialize static image for emoji {}", staticImage.name, e);
 			return null;
 		}
 	}
+
+	/**
+	 * Static image of one emoji, built with the size settings it was registered with. Only
+	 * the emojis that are actually shown hold an image, and only while it stays cached.
+	 */
+	private class LazyStaticImage implements StaticImageSource
+	{
+		private final String name;
+		private final File file;
+		private final long lastModified;
+		private final int maxHeight;
+		private final boolean isResized;
+		private volatile boolean hasFailed;
+		private CompletableFuture<BufferedImage> decoding;
+
+		LazyStaticImage(String name, File file, long lastModified, int maxHeight, boolean isResized)
+		{
+			this.name = name;
+			this.file = file;
+			this.lastModified = lastModified;
+			this.maxHeight = maxHeight;
+			this.isResized = isResized;
+		}
+
+		@Override
+		public BufferedImage getIfReady()
+		{
+			// Renderers ask every frame, so a file that failed is not decoded again until it changes
+			if (this.hasFailed)
+			{
+				return null;
+			}
+
+			BufferedImage image = EmojiLoader.this.staticImages.getIfPresent(this);
+			if (image == null)
+			{
+				this.decodeInBackground();
+			}
+			return image;
+		}
+
+		@Override
+		public CompletableFuture<BufferedImage> load()
+		{
+			BufferedImage image = this.hasFailed ? null : EmojiLoader.this.staticImages.getIfPresent(this);
+			boolean isResolved = image != null || this.hasFailed;
+			return isResolved ? CompletableFuture.completedFuture(image) : this.decodeInBackground();
+		}
+
+		/**
+		 * Starts decoding on the decode pool, or joins the decode already running for this image.
+		 */
+		private synchronized CompletableFuture<BufferedImage> decodeInBackground()
+		{
+			if (this.decoding != null)
+			{
+				return this.decoding;
+			}
+
+			ForkJoinPool pool = EmojiLoader.this.decodePool;
+			if (pool == null || pool.isShutdown())
+			{
+				return CompletableFuture.completedFuture(null);
+			}
+
+			try
+			{
+				CompletableFuture<BufferedImage> future = CompletableFuture.supplyAsync(this::decode, pool);
+				this.decoding = future;
+				future.whenComplete((image, error) -> this.finishDecoding(future));
+				return future;
+			}
+			catch (RejectedExecutionException e)
+			{
+				return CompletableFuture.completedFuture(null);
+			}
+		}
+
+		private synchronized void finishDecoding(CompletableFuture<BufferedImage> future)
+		{
+			if (this.decoding == future)
+			{
+				this.decoding = null;
+			}
+		}
+
+		private BufferedImage decode()
+		{
+			BufferedImage image = EmojiLoader.this.staticImages.get(this, () -> EmojiLoader.this.materializeStaticImage(this));
+			this.hasFailed = image == null;
+			return image;
+		}
+	}
 }
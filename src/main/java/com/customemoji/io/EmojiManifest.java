@@ -0,0 +1,336 @@
+package com.customemoji.io;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers what loading each emoji file produced, its displayed size and whether it is
+ * animated, so unchanged files can be registered at startup without decoding them. An entry is
+ * reused when the size and modified time still match, or when only the modified
+ * time changed but the content hash did not. Hashes are taken when the manifest is saved,
+ * after loading, so a cold load reads each file only once.
+ */
+@Slf4j
+class EmojiManifest
+{
+	private static final int MAGIC = 0x43454d46;
+	private static final int FORMAT_VERSION = 3;
+	private static final int HEADER_BYTES = 3 * Integer.BYTES;
+	private static final int HASH_BYTES = 32;
+	private static final int FLAG_RESIZED = 1;
+	private static final int FLAG_ANIMATED = 2;
+	private static final int FLAG_DEMOTED = 4;
+
+	@Value
+	static class Entry
+	{
+		long size;
+		long lastModified;
+		byte[] hash;
+		int maxHeight;
+		boolean isResized;
+		boolean isAnimated;
+		int width;
+		int height;
+		// Why a decode limit made the loader show it differently, reported again on every load
+		String demotionReason;
+
+		Dimension getDimension()
+		{
+			return new Dimension(this.width, this.height);
+		}
+	}
+
+	private final File file;
+	private final File root;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private volatile boolean isLoaded;
+	private volatile boolean isDirty;
+
+	EmojiManifest(File file, File root)
+	{
+		this.file = file;
+		this.root = root;
+	}
+
+	/**
+	 * Reads the manifest from disk the first time it is needed. A missing or unreadable file leaves it empty.
+	 */
+	synchronized void loadIfNeeded()
+	{
+		if (this.isLoaded)
+		{
+			return;
+		}
+		this.isLoaded = true;
+
+		Path path = this.file.toPath();
+		if (!Files.isRegularFile(path))
+		{
+			return;
+		}
+
+		try
+		{
+			// Read into the heap rather than mapped, a mapped file cannot be replaced on Windows
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+			boolean isValidHeader = buffer.remaining() >= HEADER_BYTES && buffer.getInt() == MAGIC && buffer.getInt() == FORMAT_VERSION;
+			int entryCount = isValidHeader ? buffer.getInt() : -1;
+			if (entryCount < 0)
+			{
+				throw new IllegalArgumentException("Invalid manifest header");
+			}
+
+			for (int i = 0; i < entryCount; i++)
+			{
+				this.readEntry(buffer);
+			}
+		}
+		catch (IOException | BufferUnderflowException | IllegalArgumentException e)
+		{
+			log.debug("Discarding unreadable emoji manifest", e);
+			this.entries.clear();
+		}
+	}
+
+	/**
+	 * Returns the entry for a file when it still describes the file on disk and was built with the same resize settings.
+	 * Entries that were not resized match any max height.
+	 */
+	Entry find(File imageFile, int maxHeight, boolean isResized)
+	{
+		return this.find(imageFile, imageFile.length(), imageFile.lastModified(), maxHeight, isResized);
+	}
+
+	/**
+	 * Same as {@link #find(File, int, boolean)}, with the size and modification time the caller already read.
+	 */
+	Entry find(File imageFile, long size, long lastModified, int maxHeight, boolean isResized)
+	{
+		String key = this.keyOf(imageFile);
+		Entry entry = this.entries.get(key);
+		boolean isSameSettings = entry != null && entry.isResized() == isResized && (!isResized || entry.getMaxHeight() == maxHeight);
+		if (!isSameSettings || entry.getSize() != size)
+		{
+			return null;
+		}
+
+		if (entry.getLastModified() == lastModified)
+		{
+			return entry;
+		}
+
+		// Touched but possibly unchanged, for example after a pack download rewrote it
+		if (entry.getHash() == null)
+		{
+			return null;
+		}
+
+		byte[] hash = EmojiManifest.hashOf(imageFile);
+		if (hash == null || !Arrays.equals(hash, entry.getHash()))
+		{
+			return null;
+		}
+
+		Entry touched = new Entry(entry.getSize(), lastModified, hash, maxHeight, isResized, entry.isAnimated(), entry.getWidth(), entry.getHeight(), entry.getDemotionReason());
+		this.entries.put(key, touched);
+		this.isDirty = true;
+		return touched;
+	}
+
+	void put(File imageFile, int maxHeight, boolean isResized, boolean isAnimated, Dimension dimension, String demotionReason)
+	{
+		this.put(imageFile, imageFile.length(), imageFile.lastModified(), maxHeight, isResized, isAnimated, dimension, demotionReason);
+	}
+
+	/**
+	 * Same as {@link #put(File, int, boolean, boolean, Dimension, String)}, with the size and modification time the caller already read.
+	 */
+	void put(File imageFile, long size, long lastModified, int maxHeight, boolean isResized, boolean isAnimated, Dimension dimension, String demotionReason)
+	{
+		String key = this.keyOf(imageFile);
+
+		// The hash is left for save, unless a resize change kept the same file
+		Entry previous = this.entries.get(key);
+		boolean isSameFile = previous != null && previous.getSize() == size && previous.getLastModified() == lastModified;
+		byte[] hash = isSameFile ? previous.getHash() : null;
+
+		Entry entry = new Entry(size, lastModified, hash, maxHeight, isResized, isAnimated, dimension.width, dimension.height, demotionReason);
+		this.entries.put(key, entry);
+		this.isDirty = true;
+	}
+
+	/**
+	 * Drops entries for files that are no longer loaded and writes the rest to disk when anything changed.
+	 */
+	synchronized void save(Set<File> imageFiles)
+	{
+		Set<String> keys = new HashSet<>();
+		for (File imageFile : imageFiles)
+		{
+			keys.add(this.keyOf(imageFile));
+		}
+		boolean hasRemoved = this.entries.keySet().retainAll(keys);
+		if (!hasRemoved && !this.isDirty)
+		{
+			return;
+		}
+		this.isDirty = false;
+		this.hashNewEntries();
+
+		// Entries put while hashing are written on the next save
+		Map<String, Entry> snapshot = new HashMap<>(this.entries);
+		snapshot.values().removeIf(entry -> entry.getHash() == null);
+		int size = HEADER_BYTES;
+		for (Map.Entry<String, Entry> entry : snapshot.entrySet())
+		{
+			size += EmojiManifest.serializedSize(entry.getKey(), entry.getValue());
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(MAGIC);
+		buffer.putInt(FORMAT_VERSION);
+		buffer.putInt(snapshot.size());
+		snapshot.forEach((key, entry) -> EmojiManifest.writeEntry(buffer, key, entry));
+		buffer.flip();
+
+		try
+		{
+			Path folder = this.file.getParentFile().toPath();
+			Files.createDirectories(folder);
+			Path temp = Files.createTempFile(folder, "manifest-", ".tmp");
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE))
+			{
+				while (buffer.hasRemaining())
+				{
+					channel.write(buffer);
+				}
+			}
+			Files.move(temp, this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			log.debug("Failed to write emoji manifest", e);
+		}
+	}
+
+	private void hashNewEntries()
+	{
+		for (Map.Entry<String, Entry> mapEntry : this.entries.entrySet())
+		{
+			Entry entry = mapEntry.getValue();
+			if (entry.getHash() != null)
+			{
+				continue;
+			}
+
+			// Files that cannot be read are left out and decoded again next time
+			byte[] hash = EmojiManifest.hashOf(new File(this.root, mapEntry.getKey()));
+			if (hash == null)
+			{
+				this.entries.remove(mapEntry.getKey(), entry);
+				continue;
+			}
+
+			Entry hashed = new Entry(entry.getSize(), entry.getLastModified(), hash, entry.getMaxHeight(), entry.isResized(), entry.isAnimated(), entry.getWidth(), entry.getHeight(), entry.getDemotionReason());
+			this.entries.replace(mapEntry.getKey(), entry, hashed);
+		}
+	}
+
+	private void readEntry(ByteBuffer buffer)
+	{
+		byte[] keyBytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(keyBytes);
+		long size = buffer.getLong();
+		long lastModified = buffer.getLong();
+		byte[] hash = new byte[HASH_BYTES];
+		buffer.get(hash);
+		int maxHeight = buffer.getInt();
+		byte flags = buffer.get();
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+
+		String demotionReason = null;
+		if ((flags & FLAG_DEMOTED) != 0)
+		{
+			byte[] reasonBytes = new byte[buffer.getShort() & 0xFFFF];
+			buffer.get(reasonBytes);
+			demotionReason = new String(reasonBytes, StandardCharsets.UTF_8);
+		}
+
+		boolean isResized = (flags & FLAG_RESIZED) != 0;
+		boolean isAnimated = (flags & FLAG_ANIMATED) != 0;
+		String key = new String(keyBytes, StandardCharsets.UTF_8);
+		this.entries.put(key, new Entry(size, lastModified, hash, maxHeight, isResized, isAnimated, width, height, demotionReason));
+	}
+
+	private static void writeEntry(ByteBuffer buffer, String key, Entry entry)
+	{
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		buffer.putShort((short) keyBytes.length);
+		buffer.put(keyBytes);
+		buffer.putLong(entry.getSize());
+		buffer.putLong(entry.getLastModified());
+		buffer.put(entry.getHash());
+		buffer.putInt(entry.getMaxHeight());
+		boolean isDemoted = entry.getDemotionReason() != null;
+		buffer.put((byte) ((entry.isResized() ? FLAG_RESIZED : 0) | (entry.isAnimated() ? FLAG_ANIMATED : 0) | (isDemoted ? FLAG_DEMOTED : 0)));
+		buffer.putInt(entry.getWidth());
+		buffer.putInt(entry.getHeight());
+		if (isDemoted)
+		{
+			byte[] reasonBytes = entry.getDemotionReason().getBytes(StandardCharsets.UTF_8);
+			buffer.putShort((short) reasonBytes.length);
+			buffer.put(reasonBytes);
+		}
+	}
+
+	private static int serializedSize(String key, Entry entry)
+	{
+		int keyBytes = key.getBytes(StandardCharsets.UTF_8).length;
+		int reasonBytes = entry.getDemotionReason() == null ? 0 : Short.BYTES + entry.getDemotionReason().getBytes(StandardCharsets.UTF_8).length;
+		return Short.BYTES + keyBytes + 2 * Long.BYTES + HASH_BYTES + Integer.BYTES + 1 + 2 * Integer.BYTES + reasonBytes;
+	}
+
+	private String keyOf(File imageFile)
+	{
+		return this.root.toPath().relativize(imageFile.toPath()).toString();
+	}
+
+	private static byte[] hashOf(File imageFile)
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(imageFile.toPath()));
+		}
+		catch (IOException e)
+		{
+			log.debug("Failed to hash emoji file {}", imageFile.getPath(), e);
+			return null;
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+}
@@ -4,16 +4,31 @@ import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.Predicate;
 
 import javax.annotation.Nullable;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.stream.ImageInputStream;
 
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
 import lombok.NonNull;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
@@ -25,14 +40,41 @@ public class FileUtils
 	{
 	}
 
+	/**
+	 * What the loader needs from an image file. The dimension is the full canvas, which for a
+	 * GIF is its logical screen and can be larger than the first frame.
+	 */
 	@Value
-	public static class ImageMetadata
+	public static class ImageProbe
 	{
-		boolean isAnimated;
 		Dimension dimension;
+		boolean isAnimated;
+		BufferedImage firstImage;
+	}
+
+	/**
+	 * A file found by {@link #scanFolder}, with the size and modification time read while listing it.
+	 * Files in the same folder share the same {@code folder} instance.
+	 */
+	@Value
+	public static class ScannedFile
+	{
+		File file;
+		Path folder;
+		long size;
+		long lastModified;
 	}
 
 	public static BufferedImage loadImage(final File file)
+	{
+		return FileUtils.loadImage(file, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Loads the first image, skipping rows and columns when it has more than {@code maxPixels}
+	 * pixels so huge images never allocate their full size.
+	 */
+	public static BufferedImage loadImage(final File file, long maxPixels)
 	{
 		try (ImageInputStream imageStream = ImageIO.createImageInputStream(file))
 		{
@@ -45,7 +87,7 @@ public class FileUtils
 					try
 					{
 						reader.setInput(imageStream);
-						BufferedImage image = reader.read(0);
+						BufferedImage image = FileUtils.readFirstImage(reader, maxPixels);
 						if (image != null)
 						{
 							return image;
@@ -68,8 +110,13 @@ public class FileUtils
 		return null;
 	}
 
+	/**
+	 * Reads the canvas size, whether there is a second frame and the first image with a single
+	 * open of the file. Reading stops at the second image descriptor, so the rest of a long GIF
+	 * is never touched.
+	 */
 	@Nullable
-	public static ImageMetadata getImageMetadata(File file)
+	public static ImageProbe probeImage(File file, long maxPixels)
 	{
 		try (ImageInputStream inputStream = ImageIO.createImageInputStream(file))
 		{
@@ -89,22 +136,34 @@ public class FileUtils
 			ImageReader reader = readers.next();
 			try
 			{
-				reader.setInput(inputStream);
+				reader.setInput(inputStream, true);
 
 				int width = reader.getWidth(0);
 				int height = reader.getHeight(0);
-				Dimension dimension = new Dimension(width, height);
-
 				boolean isAnimated = false;
+
 				String formatName = reader.getFormatName();
 				boolean isGif = formatName != null && formatName.equalsIgnoreCase("gif");
 				if (isGif)
 				{
-					int frameCount = reader.getNumImages(true);
-					isAnimated = frameCount > 1;
+					// Frames are composed onto the logical screen, which can be larger than the first frame
+					Dimension screen = FileUtils.getGifLogicalScreen(reader.getStreamMetadata());
+					width = Math.max(width, screen.width);
+					height = Math.max(height, screen.height);
+				}
+
+				BufferedImage firstImage = FileUtils.readFirstImage(reader, maxPixels);
+				if (firstImage == null)
+				{
+					return null;
+				}
+
+				if (isGif)
+				{
+					isAnimated = FileUtils.hasSecondImage(reader);
 				}
 
-				return new ImageMetadata(isAnimated, dimension);
+				return new ImageProbe(new Dimension(width, height), isAnimated, firstImage);
 			}
 			finally
 			{
@@ -113,11 +172,63 @@ public class FileUtils
 		}
 		catch (IOException e)
 		{
-			log.error("Failed to read image metadata for file: {}", file.getPath(), e);
+			log.error("Failed to read image from file: {}", file.getPath(), e);
 			return null;
 		}
 	}
 
+	/**
+	 * Whether the reader's input holds more than one image. Only reads up to the next image
+	 * descriptor instead of counting every frame.
+	 */
+	public static boolean hasSecondImage(ImageReader reader) throws IOException
+	{
+		try
+		{
+			reader.getWidth(1);
+			return true;
+		}
+		catch (IndexOutOfBoundsException e)
+		{
+			return false;
+		}
+	}
+
+	private static BufferedImage readFirstImage(ImageReader reader, long maxPixels) throws IOException
+	{
+		ImageReadParam param = reader.getDefaultReadParam();
+		long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+		if (pixels > maxPixels)
+		{
+			int step = (int) Math.ceil(Math.sqrt((double) pixels / maxPixels));
+			param.setSourceSubsampling(step, step, 0, 0);
+		}
+
+		return reader.read(0, param);
+	}
+
+	private static Dimension getGifLogicalScreen(@Nullable IIOMetadata streamMetadata)
+	{
+		if (streamMetadata == null)
+		{
+			return new Dimension();
+		}
+
+		Node root = streamMetadata.getAsTree(streamMetadata.getNativeMetadataFormatName());
+		for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling())
+		{
+			boolean isScreenDescriptor = "LogicalScreenDescriptor".equals(child.getNodeName());
+			if (isScreenDescriptor)
+			{
+				NamedNodeMap attributes = child.getAttributes();
+				int width = Integer.parseInt(attributes.getNamedItem("logicalScreenWidth").getNodeValue());
+				int height = Integer.parseInt(attributes.getNamedItem("logicalScreenHeight").getNodeValue());
+				return new Dimension(width, height);
+			}
+		}
+		return new Dimension();
+	}
+
 	@Nullable
 	public static String getNameWithoutExtension(File file)
 	{
@@ -130,45 +241,99 @@ public class FileUtils
 		return file.getName().substring(0, extensionIndex).toLowerCase();
 	}
 
-	public static List<File> flattenFolder(@NonNull File folder, Predicate<File> fileFilter)
+	/**
+	 * Lists the files under a folder in listing order. Each entry's attributes are read once
+	 * while its folder is walked, and subfolders are walked as separate tasks on the pool.
+	 */
+	public static List<ScannedFile> scanFolder(@NonNull File folder, Predicate<File> fileFilter, ForkJoinPool pool)
 	{
-		return FileUtils.flattenFolder(folder, fileFilter, 0);
+		if (!folder.isDirectory())
+		{
+			return List.of();
+		}
+
+		return pool.invoke(new FolderScanTask(folder.toPath(), fileFilter, 0));
 	}
 
-	private static List<File> flattenFolder(@NonNull File folder, Predicate<File> fileFilter, int depth)
+	private static class FolderScanTask extends RecursiveTask<List<ScannedFile>>
 	{
-		final int MAX_DEPTH = 8;
+		private static final int MAX_DEPTH = 8;
 
-		if (depth > MAX_DEPTH)
-		{
-			log.warn("Max depth of {} was reached path:{}", depth, folder);
-			return List.of();
-		}
+		private final Path folder;
+		private final Predicate<File> fileFilter;
+		private final int depth;
 
-		if (!folder.isDirectory())
+		FolderScanTask(Path folder, Predicate<File> fileFilter, int depth)
 		{
-			return List.of(folder);
+			this.folder = folder;
+			this.fileFilter = fileFilter;
+			this.depth = depth;
 		}
 
-		File[] children = folder.listFiles();
-		if (children == null)
+		@Override
+		protected List<ScannedFile> compute()
 		{
-			return List.of();
-		}
+			if (this.depth > MAX_DEPTH)
+			{
+				log.warn("Max depth of {} was reached path:{}", this.depth, this.folder);
+				return List.of();
+			}
 
-		List<File> flattened = new ArrayList<>();
-		for (File child : children)
-		{
-			boolean isDirectory = child.isDirectory();
+			// Null entries mark where the files of the next subfolder go, so the listing order is kept
+			List<ScannedFile> entries = new ArrayList<>();
+			List<FolderScanTask> subfolders = new ArrayList<>();
+			try
+			{
+				Files.walkFileTree(this.folder, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, new SimpleFileVisitor<Path>()
+				{
+					@Override
+					public FileVisitResult visitFile(Path path, BasicFileAttributes attributes)
+					{
+						if (attributes.isDirectory())
+						{
+							subfolders.add(new FolderScanTask(path, FolderScanTask.this.fileFilter, FolderScanTask.this.depth + 1));
+							entries.add(null);
+							return FileVisitResult.CONTINUE;
+						}
+
+						File file = path.toFile();
+						if (FolderScanTask.this.fileFilter.test(file))
+						{
+							entries.add(new ScannedFile(file, FolderScanTask.this.folder, attributes.size(), attributes.lastModifiedTime().toMillis()));
+						}
+						return FileVisitResult.CONTINUE;
+					}
 
-			if (!isDirectory && !fileFilter.test(child))
+					@Override
+					public FileVisitResult visitFileFailed(Path path, IOException e)
+					{
+						log.debug("Skipping unreadable path: {}", path, e);
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			}
+			catch (IOException e)
 			{
-				continue;
+				log.warn("Failed to scan folder: {}", this.folder, e);
+				return List.of();
 			}
 
-			flattened.addAll(FileUtils.flattenFolder(child, fileFilter, depth + 1));
-		}
+			ForkJoinTask.invokeAll(subfolders);
 
-		return flattened;
+			List<ScannedFile> scanned = new ArrayList<>();
+			Iterator<FolderScanTask> subfolderIterator = subfolders.iterator();
+			for (ScannedFile entry : entries)
+			{
+				if (entry == null)
+				{
+					scanned.addAll(subfolderIterator.next().join());
+				}
+				else
+				{
+					scanned.add(entry);
+				}
+			}
+			return scanned;
+		}
 	}
 }
@@ -0,0 +1,198 @@
+package com.customemoji.io;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a folder tree and runs a callback once changes have settled, so a burst of
+ * writes such as copying in a whole pack causes one update instead of one per file.
+ * Folders whose name starts with a dot, like the emoji cache, are ignored.
+ */
+@Slf4j
+class FolderWatcher
+{
+	private final File root;
+	private final long debounceMs;
+	private final String threadName;
+	private final Runnable onChange;
+
+	private WatchService watchService;
+	private Thread thread;
+
+	FolderWatcher(File root, long debounceMs, String threadName, Runnable onChange)
+	{
+		this.root = root;
+		this.debounceMs = debounceMs;
+		this.threadName = threadName;
+		this.onChange = onChange;
+	}
+
+	synchronized void start()
+	{
+		if (this.thread != null || !this.root.isDirectory())
+		{
+			return;
+		}
+
+		try
+		{
+			this.watchService = this.root.toPath().getFileSystem().newWatchService();
+			this.registerTree(this.root.toPath());
+		}
+		catch (IOException e)
+		{
+			log.warn("Not watching {} for changes", this.root.getPath(), e);
+			this.closeWatchService();
+			return;
+		}
+
+		this.thread = new Thread(this::watch, this.threadName);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	synchronized void stop()
+	{
+		if (this.thread == null)
+		{
+			return;
+		}
+
+		this.thread.interrupt();
+		this.thread = null;
+		this.closeWatchService();
+	}
+
+	private void watch()
+	{
+		boolean hasPendingChanges = false;
+		try
+		{
+			while (!Thread.currentThread().isInterrupted())
+			{
+				WatchKey key = hasPendingChanges
+					? this.watchService.poll(this.debounceMs, TimeUnit.MILLISECONDS)
+					: this.watchService.take();
+
+				if (key == null)
+				{
+					// Nothing new for a full debounce period
+					hasPendingChanges = false;
+					this.runCallback();
+					continue;
+				}
+
+				hasPendingChanges |= this.handleEvents(key);
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e)
+		{
+			log.debug("Stopped watching {}", this.root.getPath());
+		}
+	}
+
+	private boolean handleEvents(WatchKey key)
+	{
+		Path directory = (Path) key.watchable();
+		boolean hasRelevantChange = false;
+
+		for (WatchEvent<?> event : key.pollEvents())
+		{
+			boolean isOverflow = event.kind() == StandardWatchEventKinds.OVERFLOW;
+			Path child = isOverflow ? null : directory.resolve((Path) event.context());
+			if (child != null && FolderWatcher.isHidden(child))
+			{
+				continue;
+			}
+
+			hasRelevantChange = true;
+			boolean isNewDirectory = event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child);
+			if (isNewDirectory)
+			{
+				try
+				{
+					this.registerTree(child);
+				}
+				catch (IOException e)
+				{
+					log.debug("Failed to watch new folder {}", child, e);
+				}
+			}
+		}
+
+		key.reset();
+		return hasRelevantChange;
+	}
+
+	private void registerTree(Path start) throws IOException
+	{
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException
+			{
+				if (FolderWatcher.isHidden(directory))
+				{
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+
+				directory.register(
+					FolderWatcher.this.watchService,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE,
+					StandardWatchEventKinds.ENTRY_MODIFY
+				);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void runCallback()
+	{
+		try
+		{
+			this.onChange.run();
+		}
+		catch (RuntimeException e)
+		{
+			log.warn("Failed to apply changes in {}", this.root.getPath(), e);
+		}
+	}
+
+	private void closeWatchService()
+	{
+		if (this.watchService == null)
+		{
+			return;
+		}
+
+		try
+		{
+			this.watchService.close();
+		}
+		catch (IOException e)
+		{
+			log.debug("Failed to close watch service for {}", this.root.getPath(), e);
+		}
+		this.watchService = null;
+	}
+
+	private static boolean isHidden(Path path)
+	{
+		Path name = path.getFileName();
+		return name != null && name.toString().startsWith(".");
+	}
+}
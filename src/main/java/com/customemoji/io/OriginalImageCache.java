@@ -0,0 +1,85 @@
+package com.customemoji.io;
+
+import lombok.Value;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Byte-budgeted store of the first images of resized emojis, scaled down to the largest max
+ * height the slider allows, so moving the slider rebuilds static images without reading the
+ * files. Entries are added whenever such an emoji is decoded. Once the budget is used up new
+ * entries are turned away rather than evicting older ones, so a pack larger than the budget
+ * keeps the same part in memory and a height change reads only the rest from disk.
+ */
+class OriginalImageCache
+{
+	@Value
+	static class Original
+	{
+		long lastModified;
+		boolean isAnimated;
+		BufferedImage image;
+		String demotionReason;
+	}
+
+	private final Map<File, Original> originals = new HashMap<>();
+	private final long budgetBytes;
+	private long usedBytes;
+
+	OriginalImageCache(long budgetBytes)
+	{
+		this.budgetBytes = budgetBytes;
+	}
+
+	/**
+	 * Returns the original when it was decoded from the same version of the file.
+	 */
+	synchronized Original get(File file, long lastModified)
+	{
+		Original original = this.originals.get(file);
+		boolean isCurrent = original != null && original.getLastModified() == lastModified;
+		return isCurrent ? original : null;
+	}
+
+	/**
+	 * Keeps the original unless the budget is already used up by other files.
+	 */
+	synchronized void put(File file, Original original)
+	{
+		long size = OriginalImageCache.byteSizeOf(original);
+		Original previous = this.originals.get(file);
+		long previousSize = previous != null ? OriginalImageCache.byteSizeOf(previous) : 0;
+		boolean hasRoom = this.usedBytes - previousSize + size <= this.budgetBytes;
+		if (!hasRoom)
+		{
+			return;
+		}
+
+		this.originals.put(file, original);
+		this.usedBytes += size - previousSize;
+	}
+
+	synchronized void remove(File file)
+	{
+		Original removed = this.originals.remove(file);
+		if (removed != null)
+		{
+			this.usedBytes -= OriginalImageCache.byteSizeOf(removed);
+		}
+	}
+
+	synchronized void clear()
+	{
+		this.originals.clear();
+		this.usedBytes = 0;
+	}
+
+	private static long byteSizeOf(Original original)
+	{
+		BufferedImage image = original.getImage();
+		return (long) image.getWidth() * image.getHeight() * Integer.BYTES;
+	}
+}
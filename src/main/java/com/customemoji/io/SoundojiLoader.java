@@ -16,10 +16,12 @@ import net.runelite.client.eventbus.EventBus;
 import net.runelite.client.eventbus.Subscribe;
 
 import java.io.File;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import com.google.common.collect.ImmutableSet;
 
@@ -30,6 +32,7 @@ public class SoundojiLoader implements Lifecycle
 	public static final File SOUNDOJIS_FOLDER = RuneLite.RUNELITE_DIR.toPath().resolve("soundojis").toFile();
 
 	private static final Set<String> SUPPORTED_AUDIO_EXTENSIONS = ImmutableSet.of("wav");
+	private static final long FOLDER_CHANGE_DEBOUNCE_MS = 500;
 
 	public static boolean isSupportedAudioFormat(File file)
 	{
@@ -50,12 +53,15 @@ public class SoundojiLoader implements Lifecycle
 	@Getter
 	private final Map<String, Soundoji> soundojis = new ConcurrentHashMap<>();
 
+	private final FolderWatcher folderWatcher = new FolderWatcher(SOUNDOJIS_FOLDER, FOLDER_CHANGE_DEBOUNCE_MS, "CustomEmoji-SoundojiWatcher", this::loadAllSoundojis);
+
 	@Override
 	public void startUp()
 	{
 		this.firstTimeSetup();
 		this.eventBus.register(this);
 		this.loadAllSoundojis();
+		this.folderWatcher.start();
 	}
 
 	private void firstTimeSetup()
@@ -66,6 +72,7 @@ public class SoundojiLoader implements Lifecycle
 	@Override
 	public void shutDown()
 	{
+		this.folderWatcher.stop();
 		this.eventBus.unregister(this);
 		this.soundojis.clear();
 	}
@@ -82,20 +89,25 @@ public class SoundojiLoader implements Lifecycle
 		this.loadAllSoundojis();
 	}
 
-	private void loadAllSoundojis()
+	/**
+	 * Brings the loaded soundojis in line with the folder, keeping entries whose file did not change.
+	 * Runs at startup, on reload requests and when the folder watcher sees changes.
+	 */
+	private synchronized void loadAllSoundojis()
 	{
-		this.soundojis.clear();
-
 		if (!SOUNDOJIS_FOLDER.isDirectory())
 		{
 			log.debug("Soundojis folder not found: {}", SOUNDOJIS_FOLDER.getPath());
+			this.soundojis.clear();
 			return;
 		}
 
-		List<File> files = FileUtils.flattenFolder(SOUNDOJIS_FOLDER, SoundojiLoader::isSupportedAudioFormat);
+		List<FileUtils.ScannedFile> files = FileUtils.scanFolder(SOUNDOJIS_FOLDER, SoundojiLoader::isSupportedAudioFormat, ForkJoinPool.commonPool());
 
-		for (File file : files)
+		Map<String, File> filesByName = new HashMap<>();
+		for (FileUtils.ScannedFile scanned : files)
 		{
+			File file = scanned.getFile();
 			String name = FileUtils.getNameWithoutExtension(file);
 			if (name == null)
 			{
@@ -103,10 +115,25 @@ public class SoundojiLoader implements Lifecycle
 				continue;
 			}
 
-			this.soundojis.put(name, new Soundoji(name, file));
+			filesByName.put(name, file);
+		}
+
+		boolean hasChanges = this.soundojis.keySet().retainAll(filesByName.keySet());
+		for (Map.Entry<String, File> entry : filesByName.entrySet())
+		{
+			Soundoji existing = this.soundojis.get(entry.getKey());
+			boolean isUnchanged = existing != null && existing.getFile().equals(entry.getValue());
+			if (!isUnchanged)
+			{
+				this.soundojis.put(entry.getKey(), new Soundoji(entry.getKey(), entry.getValue()));
+				hasChanges = true;
+			}
 		}
 
-		log.debug("Loaded {} soundojis", this.soundojis.size());
-		this.eventBus.post(new AfterSoundojisLoaded(this.soundojis));
+		if (hasChanges)
+		{
+			log.debug("Loaded {} soundojis", this.soundojis.size());
+			this.eventBus.post(new AfterSoundojisLoaded(this.soundojis));
+		}
 	}
 }
@@ -0,0 +1,118 @@
+package com.customemoji.io;
+
+import java.awt.image.BufferedImage;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Keeps recently shown static emoji images within a byte budget. Images are held through soft
+ * references, so the garbage collector can still reclaim them under memory pressure, and are
+ * decoded again when next needed. Least recently used entries are evicted first.
+ */
+class StaticImageCache
+{
+	private static class Entry
+	{
+		private final SoftReference<BufferedImage> image;
+		private final long bytes;
+
+		Entry(BufferedImage image)
+		{
+			this.image = new SoftReference<>(image);
+			this.bytes = (long) image.getWidth() * image.getHeight() * Integer.BYTES;
+		}
+	}
+
+	private final Map<Object, Entry> images = new LinkedHashMap<>(16, 0.75f, true);
+	private final long budgetBytes;
+	private long usedBytes;
+
+	StaticImageCache(long budgetBytes)
+	{
+		this.budgetBytes = budgetBytes;
+	}
+
+	/**
+	 * Returns the cached image for the key, or loads and caches it. Loading happens outside the
+	 * lock, so a slow decode does not hold up lookups from other threads.
+	 */
+	BufferedImage get(Object key, Supplier<BufferedImage> loader)
+	{
+		BufferedImage image = this.getIfPresent(key);
+		if (image != null)
+		{
+			return image;
+		}
+
+		image = loader.get();
+		if (image != null)
+		{
+			this.put(key, image, true);
+		}
+		return image;
+	}
+
+	/**
+	 * Caches an image decoded ahead of time, but only when it fits without evicting anything,
+	 * so images primed while loading never push out ones that were actually shown.
+	 */
+	void prime(Object key, BufferedImage image)
+	{
+		this.put(key, image, false);
+	}
+
+	synchronized void clear()
+	{
+		this.images.clear();
+		this.usedBytes = 0;
+	}
+
+	synchronized BufferedImage getIfPresent(Object key)
+	{
+		Entry entry = this.images.get(key);
+		if (entry == null)
+		{
+			return null;
+		}
+
+		BufferedImage image = entry.image.get();
+		if (image == null)
+		{
+			this.images.remove(key);
+			this.usedBytes -= entry.bytes;
+		}
+		return image;
+	}
+
+	private synchronized void put(Object key, BufferedImage image, boolean canEvict)
+	{
+		Entry entry = new Entry(image);
+		boolean fits = this.usedBytes + entry.bytes <= this.budgetBytes;
+		if (!fits && !canEvict)
+		{
+			return;
+		}
+
+		Entry previous = this.images.put(key, entry);
+		if (previous != null)
+		{
+			this.usedBytes -= previous.bytes;
+		}
+		this.usedBytes += entry.bytes;
+
+		Iterator<Entry> iterator = this.images.values().iterator();
+		while (this.usedBytes > this.budgetBytes && iterator.hasNext())
+		{
+			Entry eldest = iterator.next();
+			if (eldest == entry)
+			{
+				break;
+			}
+			this.usedBytes -= eldest.bytes;
+			iterator.remove();
+		}
+	}
+}
@@ -3,6 +3,7 @@ package com.customemoji.model;
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -23,5 +24,17 @@ public class AnimatedEmoji implements Emoji
 	private final File file;
 	private final long lastModified;
 	private final Dimension dimension;
-	private final BufferedImage staticImage;
+	private final StaticImageSource staticImageSource;
+
+	@Override
+	public BufferedImage getStaticImage()
+	{
+		return this.staticImageSource.getIfReady();
+	}
+
+	@Override
+	public CompletableFuture<BufferedImage> loadStaticImage()
+	{
+		return this.staticImageSource.load();
+	}
 }
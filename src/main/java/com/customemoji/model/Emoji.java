@@ -3,6 +3,7 @@ package com.customemoji.model;
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
 
 public interface Emoji
 {
@@ -31,5 +32,13 @@ public interface Emoji
 
 	Dimension getDimension();
 
+	/**
+	 * Returns null until the image has been decoded in the background, or when the file can no longer be read.
+	 */
 	BufferedImage getStaticImage();
+
+	/**
+	 * Completes once the image is decoded in the background, with null when the file can no longer be read.
+	 */
+	CompletableFuture<BufferedImage> loadStaticImage();
 }
\ No newline at end of file
@@ -1,7 +1,6 @@
 package com.customemoji.model;
 
 import java.awt.Dimension;
-import java.awt.image.BufferedImage;
 import java.io.File;
 
 import com.customemoji.model.AnimatedEmoji.AnimatedEmojiBuilder;
@@ -20,7 +19,7 @@ public class EmojiDto
 	private File file;
 	private Dimension dimension;
 	private long lastModified;
-	private BufferedImage staticImage;
+	private StaticImageSource staticImageSource;
 	private Integer index;
 	private Integer iconId;
 	private Integer zeroWidthIndex;
@@ -34,7 +33,7 @@ public class EmojiDto
 			   text != null && 
 			   dimension != null && 
 			   lastModified > 0 && 
-			   staticImage != null &&
+			   staticImageSource != null &&
 			   index != null &&
 			   iconId != null &&
 			   (!isZeroWidth || (zeroWidthIndex != null && zeroWidthIconId != null));
@@ -80,7 +79,7 @@ public class EmojiDto
 						  .text(this.text)
 						  .dimension(this.dimension)
 						  .lastModified(this.lastModified)
-						  .staticImage(this.staticImage)
+						  .staticImageSource(this.staticImageSource)
 						  .build();		 
 		}
 		else
@@ -99,7 +98,7 @@ public class EmojiDto
 						  .text(this.text)
 						  .dimension(this.dimension)
 						  .lastModified(this.lastModified)
-						  .staticImage(this.staticImage)
+						  .staticImageSource(this.staticImageSource)
 						  .build();
 		}
 	}
@@ -0,0 +1,21 @@
+package com.customemoji.model;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Provides the static image of an emoji, which is decoded on first use rather than kept from loading.
+ */
+public interface StaticImageSource
+{
+	/**
+	 * Returns the image when it is already decoded. Otherwise decoding starts in the background
+	 * and null is returned, so this is safe to call from the client thread every frame.
+	 */
+	BufferedImage getIfReady();
+
+	/**
+	 * Decodes the image in the background when needed. Completes with null when the file can no longer be read.
+	 */
+	CompletableFuture<BufferedImage> load();
+}
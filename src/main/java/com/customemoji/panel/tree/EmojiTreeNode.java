@@ -1,6 +1,9 @@
 package com.customemoji.panel.tree;
 
+import javax.swing.SwingUtilities;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * Represents a node in the emoji tree structure.
@@ -12,29 +15,36 @@ public class EmojiTreeNode
 	private final boolean isFolder;
 	private boolean isEnabled;
 	private boolean resizingEnabled;
+	private final Supplier<CompletableFuture<BufferedImage>> imageLoader;
+
+	// Only touched on the event dispatch thread
 	private BufferedImage image;
-	private final boolean failedToLoad;
+	private boolean isLoadingImage;
+	private boolean failedToLoad;
 
 	private EmojiTreeNode(String name, boolean isFolder, boolean isEnabled,
-						  boolean resizingEnabled, BufferedImage image, boolean failedToLoad)
+						  boolean resizingEnabled, Supplier<CompletableFuture<BufferedImage>> imageLoader)
 	{
 		this.name = name;
 		this.isFolder = isFolder;
 		this.isEnabled = isEnabled;
 		this.resizingEnabled = resizingEnabled;
-		this.image = image;
-		this.failedToLoad = failedToLoad;
+		this.imageLoader = imageLoader;
 	}
 
 	public static EmojiTreeNode createFolder(String name, boolean enabled, boolean resizingEnabled)
 	{
-		return new EmojiTreeNode(name, true, enabled, resizingEnabled, null, false);
+		return new EmojiTreeNode(name, true, enabled, resizingEnabled, null);
 	}
 
+	/**
+	 * Creates an emoji node without an image. The image is decoded in the background once
+	 * {@link #loadImage} is called for it, usually when a row is built for the node.
+	 */
 	public static EmojiTreeNode createEmoji(String name, boolean enabled, boolean resizingEnabled,
-											BufferedImage image, boolean failedToLoad)
+											Supplier<CompletableFuture<BufferedImage>> imageLoader)
 	{
-		return new EmojiTreeNode(name, false, enabled, resizingEnabled, image, failedToLoad);
+		return new EmojiTreeNode(name, false, enabled, resizingEnabled, imageLoader);
 	}
 
 	public String getName()
@@ -67,6 +77,9 @@ public class EmojiTreeNode
 		this.resizingEnabled = resizingEnabled;
 	}
 
+	/**
+	 * Returns the image once it has been loaded, null before then.
+	 */
 	public BufferedImage getImage()
 	{
 		return this.image;
@@ -75,6 +88,7 @@ public class EmojiTreeNode
 	public void setImage(BufferedImage image)
 	{
 		this.image = image;
+		this.failedToLoad = false;
 	}
 
 	public boolean isFailedToLoad()
@@ -82,6 +96,42 @@ public class EmojiTreeNode
 		return this.failedToLoad;
 	}
 
+	/**
+	 * Starts loading the image unless it is already loaded, loading or failed. An image that is
+	 * ready right away is kept before this returns. Otherwise {@code onLoaded} runs on the event
+	 * dispatch thread once the image or the failure has been kept. Must be called on the event
+	 * dispatch thread.
+	 */
+	public void loadImage(Runnable onLoaded)
+	{
+		boolean isResolved = this.isFolder || this.image != null || this.failedToLoad;
+		if (isResolved || this.isLoadingImage)
+		{
+			return;
+		}
+
+		CompletableFuture<BufferedImage> loading = this.imageLoader.get().exceptionally(error -> null);
+		if (loading.isDone())
+		{
+			this.keepImage(loading.getNow(null));
+			return;
+		}
+
+		this.isLoadingImage = true;
+		loading.whenComplete((loaded, error) -> SwingUtilities.invokeLater(() ->
+		{
+			this.isLoadingImage = false;
+			this.keepImage(loaded);
+			onLoaded.run();
+		}));
+	}
+
+	private void keepImage(BufferedImage loaded)
+	{
+		this.image = loaded;
+		this.failedToLoad = loaded == null;
+	}
+
 	@Override
 	public String toString()
 	{
@@ -3,7 +3,6 @@ package com.customemoji.panel.tree;
 import com.customemoji.io.EmojiLoader;
 import com.customemoji.model.Emoji;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -188,12 +187,10 @@ public class FolderStructureBuilder
 
 	private void addEmojiItem(String emojiName, Emoji emoji, String folderPath)
 	{
-		BufferedImage emojiImage = this.loadEmojiImage(emoji);
-		boolean failedToLoad = (emojiImage == null);
 		boolean isEnabled = !this.disabledEmojis.contains(emojiName);
 		boolean isResizingEnabled = !this.resizingDisabledEmojis.contains(emojiName);
 
-		EmojiTreeNode item = EmojiTreeNode.createEmoji(emojiName, isEnabled, isResizingEnabled, emojiImage, failedToLoad);
+		EmojiTreeNode item = EmojiTreeNode.createEmoji(emojiName, isEnabled, isResizingEnabled, emoji::loadStaticImage);
 		this.folderContents.computeIfAbsent(folderPath, k -> new ArrayList<>()).add(item);
 	}
 
@@ -278,10 +275,5 @@ public class FolderStructureBuilder
 		}
 		return false;
 	}
-
-	private BufferedImage loadEmojiImage(Emoji emoji)
-	{
-		return emoji.getStaticImage();
-	}
 }
 
@@ -52,6 +52,9 @@ public class RowPanelBuilder
 		rowPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 28));
 		rowPanel.setPreferredSize(new Dimension(200, 28));
 
+		// The row shows a placeholder until the image is decoded, then its left side is rebuilt
+		item.loadImage(() -> this.refreshLeftPanel(rowPanel, item));
+
 		JPanel leftPanel = this.createLeftPanel(item);
 		JLabel nameLabel = this.createNameLabel(item);
 		leftPanel.add(nameLabel);
@@ -69,6 +72,19 @@ public class RowPanelBuilder
 		return rowPanel;
 	}
 
+	private void refreshLeftPanel(JPanel rowPanel, EmojiTreeNode item)
+	{
+		BorderLayout layout = (BorderLayout) rowPanel.getLayout();
+		rowPanel.remove(layout.getLayoutComponent(BorderLayout.CENTER));
+
+		JPanel leftPanel = this.createLeftPanel(item);
+		leftPanel.add(this.createNameLabel(item));
+		rowPanel.add(leftPanel, BorderLayout.CENTER);
+
+		rowPanel.revalidate();
+		rowPanel.repaint();
+	}
+
 	private JPanel createLeftPanel(EmojiTreeNode item)
 	{
 		JPanel leftPanel = new JPanel();
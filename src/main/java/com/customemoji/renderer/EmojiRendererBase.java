@@ -3,12 +3,15 @@ package com.customemoji.renderer;
 import com.customemoji.CustomEmojiConfig;
 import com.customemoji.EmojiPosition;
 import com.customemoji.PluginUtils;
+import com.customemoji.animation.AnimationGovernor;
 import com.customemoji.animation.AnimationManager;
 import com.customemoji.animation.GifAnimation;
 import com.customemoji.event.AfterEmojisLoaded;
+import com.customemoji.event.EmojisRegistered;
 import com.customemoji.model.AnimatedEmoji;
 import com.customemoji.model.Emoji;
 import com.customemoji.model.Lifecycle;
+import com.customemoji.service.ChatIconPool;
 
 import net.runelite.api.Client;
 import net.runelite.client.eventbus.EventBus;
@@ -28,16 +31,22 @@ import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 public abstract class EmojiRendererBase extends Overlay implements Lifecycle
 {
-	protected static final int MAX_RENDERED_ANIMATIONS = 300;
 	protected static final long LOAD_DEBOUNCE_MS = 150;
 
 	@Inject
 	protected AnimationManager animationManager;
 
+	@Inject
+	protected AnimationGovernor animationGovernor;
+
+	@Inject
+	protected ChatIconPool chatIconPool;
+
 	@Inject
 	private OverlayManager overlayManager;
 
@@ -49,9 +58,7 @@ public abstract class EmojiRendererBase extends Overlay implements Lifecycle
 	protected Supplier<Map<String, Emoji>> emojisSupplier;
 	protected Function<AnimatedEmoji, GifAnimation> animationLoader;
 	protected Consumer<Integer> markVisibleCallback;
-
-	private Map<Integer, Emoji> cachedEmojiLookup = null;
-	private int cachedEmojiCount = -1;
+	protected Predicate<Integer> animationReadyCheck;
 
 	private Set<String> cachedDisabledEmojis = null;
 	private String cachedDisabledEmojisConfig = null;
@@ -70,6 +77,7 @@ public abstract class EmojiRendererBase extends Overlay implements Lifecycle
 	{
 		this.animationLoader = this.animationManager::getOrLoadAnimation;
 		this.markVisibleCallback = this.animationManager::markAnimationVisible;
+		this.animationReadyCheck = this.animationManager::isAnimationReady;
 		this.overlayManager.add(this);
 	}
 
@@ -93,6 +101,14 @@ public abstract class EmojiRendererBase extends Overlay implements Lifecycle
 		this.resetCache();
 	}
 
+	@Subscribe
+	public void onEmojisRegistered(EmojisRegistered event)
+	{
+		Map<String, Emoji> emojis = event.getEmojis();
+		this.emojisSupplier = () -> emojis;
+		this.resetCache();
+	}
+
 	@Subscribe
 	public void onConfigChanged(ConfigChanged event)
 	{
@@ -119,8 +135,6 @@ public abstract class EmojiRendererBase extends Overlay implements Lifecycle
 
 	public void resetCache()
 	{
-		this.cachedEmojiLookup = null;
-		this.cachedEmojiCount = -1;
 	}
 
 	protected BufferedImage resolveEmojiImage(Emoji emoji, int emojiId, Set<Integer> visibleEmojiIds)
@@ -143,12 +157,23 @@ public abstract class EmojiRendererBase extends Overlay implements Lifecycle
 		return emoji.getStaticImage();
 	}
 
+	/**
+	 * Resolves an emoji to its static image, keeping it counted as visible.
+	 */
+	protected BufferedImage resolveStaticEmojiImage(Emoji emoji, int emojiId, Set<Integer> visibleEmojiIds)
+	{
+		visibleEmojiIds.add(emojiId);
+		return emoji.getStaticImage();
+	}
+
 	protected BufferedImage tryGetAnimatedFrame(AnimatedEmoji animatedEmoji, int emojiId, Set<Integer> visibleEmojiIds)
 	{
 		boolean animationsEnabled = this.config.animationLoadingMode() != CustomEmojiConfig.AnimationLoadingMode.OFF;
 		boolean hasAnimationLoader = this.animationLoader != null;
-		boolean hasPassedDebounce = this.hasPassedLoadDebounce(emojiId);
-		boolean capacityExceeded = visibleEmojiIds.size() > MAX_RENDERED_ANIMATIONS;
+		// A prewarmed animation costs nothing to show, the debounce only holds back new loads
+		boolean isReady = this.animationReadyCheck != null && this.animationReadyCheck.test(emojiId);
+		boolean hasPassedDebounce = this.hasPassedLoadDebounce(emojiId) || isReady;
+		boolean capacityExceeded = visibleEmojiIds.size() > this.animationGovernor.getMaxAnimations();
 		boolean shouldLoadAnimation = animationsEnabled && hasAnimationLoader && hasPassedDebounce && !capacityExceeded;
 		if (!shouldLoadAnimation)
 		{
@@ -179,6 +204,12 @@ public abstract class EmojiRendererBase extends Overlay implements Lifecycle
 
 	protected void drawEmojiImage(Graphics2D graphics, BufferedImage image, EmojiPosition position)
 	{
+		// Static images are decoded on demand and may be missing if the file went away
+		if (image == null)
+		{
+			return;
+		}
+
 		int drawX = position.getX();
 		int drawY = position.getY();
 		int drawWidth = image.getWidth();
@@ -209,24 +240,12 @@ public abstract class EmojiRendererBase extends Overlay implements Lifecycle
 	{
 	}
 
-	protected Map<Integer, Emoji> getOrBuildEmojiLookup()
+	/**
+	 * Emojis by the image id used in chat tags. Only emojis that hold a chat icon slot can appear in text.
+	 */
+	protected Map<Integer, Emoji> getEmojiLookup()
 	{
-		if (this.emojisSupplier == null)
-		{
-			return new HashMap<>();
-		}
-
-		Map<String, Emoji> emojis = this.emojisSupplier.get();
-		int currentEmojiCount = emojis.size();
-
-		boolean needsRebuild = this.cachedEmojiLookup == null || this.cachedEmojiCount != currentEmojiCount;
-		if (needsRebuild)
-		{
-			this.cachedEmojiLookup = PluginUtils.buildEmojiLookup(this.emojisSupplier);
-			this.cachedEmojiCount = currentEmojiCount;
-		}
-
-		return this.cachedEmojiLookup;
+		return this.chatIconPool.getEmojisByImageId();
 	}
 
 	private Set<String> getDisabledEmojisSet()
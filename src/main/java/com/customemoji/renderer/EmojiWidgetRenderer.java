@@ -29,7 +29,7 @@ import java.util.function.Consumer;
 public abstract class EmojiWidgetRenderer extends EmojiRendererBase
 {
 	protected final int widgetId;
-	protected Consumer<Set<Integer>> unloadStaleCallback;
+	protected Consumer<Set<Integer>> trimAnimationsCallback;
 
 	private final Map<PositionCacheKey, List<EmojiPosition>> positionCache = new HashMap<>();
 	private final Set<Integer> visibleEmojiIds = new HashSet<>();
@@ -92,7 +92,7 @@ public abstract class EmojiWidgetRenderer extends EmojiRendererBase
 	public void startUp()
 	{
 		super.startUp();
-		this.unloadStaleCallback = this.animationManager::unloadStaleAnimations;
+		this.trimAnimationsCallback = this.animationManager::trimAnimations;
 	}
 
 	@Override
@@ -129,7 +129,8 @@ public abstract class EmojiWidgetRenderer extends EmojiRendererBase
 			return null;
 		}
 
-		Map<Integer, Emoji> emojiLookup = this.getOrBuildEmojiLookup();
+		long startNanos = System.nanoTime();
+		Map<Integer, Emoji> emojiLookup = this.getEmojiLookup();
 
 		this.visibleEmojiIds.clear();
 		Shape originalClip = graphics.getClip();
@@ -144,12 +145,13 @@ public abstract class EmojiWidgetRenderer extends EmojiRendererBase
 		graphics.setClip(originalClip);
 
 		this.cleanupStaleEmojis(this.visibleEmojiIds);
-		if (this.unloadStaleCallback != null)
+		if (this.trimAnimationsCallback != null)
 		{
-			this.unloadStaleCallback.accept(this.visibleEmojiIds);
+			this.trimAnimationsCallback.accept(this.visibleEmojiIds);
 		}
 
 		this.onRenderComplete();
+		this.animationGovernor.recordRenderTime(System.nanoTime() - startNanos);
 
 		return null;
 	}
@@ -220,7 +222,7 @@ public abstract class EmojiWidgetRenderer extends EmojiRendererBase
 			imageId -> PluginUtils.getEmojiDimension(this.client.getModIcons(), imageId)
 		);
 
-		Map<Integer, Emoji> emojiLookup = this.getOrBuildEmojiLookup();
+		Map<Integer, Emoji> emojiLookup = this.getEmojiLookup();
 		PluginUtils.linkZeroWidthEmojisToTarget(positions, emojiLookup);
 
 		this.positionCache.put(cacheKey, positions);
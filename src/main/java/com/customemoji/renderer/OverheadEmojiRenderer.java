@@ -12,6 +12,7 @@ import net.runelite.api.Player;
 import net.runelite.api.Point;
 import net.runelite.api.WorldEntity;
 import net.runelite.api.WorldView;
+import net.runelite.api.coords.WorldPoint;
 import net.runelite.api.gameval.InterfaceID;
 import net.runelite.api.widgets.Widget;
 import net.runelite.client.eventbus.EventBus;
@@ -54,8 +55,10 @@ public class OverheadEmojiRenderer extends EmojiRendererBase
 			return null;
 		}
 
-		Map<Integer, Emoji> emojiLookup = PluginUtils.buildEmojiLookup(this.emojisSupplier);
+		long startNanos = System.nanoTime();
+		Map<Integer, Emoji> emojiLookup = this.getEmojiLookup();
 		Set<Integer> visibleEmojiIds = new HashSet<>();
+		Player localPlayer = this.client.getLocalPlayer();
 
 		for (Player player : players)
 		{
@@ -64,15 +67,17 @@ public class OverheadEmojiRenderer extends EmojiRendererBase
 				continue;
 			}
 
-			this.renderPlayerOverhead(graphics, player, visibleEmojiIds, emojiLookup);
+			boolean isAnimated = this.animationGovernor.isOverheadAnimated(this.distanceTo(localPlayer, player));
+			this.renderPlayerOverhead(graphics, player, isAnimated, visibleEmojiIds, emojiLookup);
 		}
 
 		this.cleanupStaleEmojis(visibleEmojiIds);
+		this.animationGovernor.recordRenderTime(System.nanoTime() - startNanos);
 
 		return null;
 	}
 
-	private void renderPlayerOverhead(Graphics2D graphics, Player player, Set<Integer> visibleEmojiIds, Map<Integer, Emoji> emojiLookup)
+	private void renderPlayerOverhead(Graphics2D graphics, Player player, boolean isAnimated, Set<Integer> visibleEmojiIds, Map<Integer, Emoji> emojiLookup)
 	{
 		if (player == null)
 		{
@@ -106,12 +111,12 @@ public class OverheadEmojiRenderer extends EmojiRendererBase
 			Emoji emoji = emojiLookup.get(position.getImageId());
 			if (emoji != null)
 			{
-				this.renderEmoji(graphics, emoji, position, visibleEmojiIds);
+				this.renderEmoji(graphics, emoji, position, isAnimated, visibleEmojiIds);
 			}
 		}
 	}
 
-	private void renderEmoji(Graphics2D graphics, Emoji emoji, EmojiPosition position, Set<Integer> visibleEmojiIds)
+	private void renderEmoji(Graphics2D graphics, Emoji emoji, EmojiPosition position, boolean isAnimated, Set<Integer> visibleEmojiIds)
 	{
 		if (this.isEmojiDisabled(emoji))
 		{
@@ -119,10 +124,29 @@ public class OverheadEmojiRenderer extends EmojiRendererBase
 		}
 
 		int emojiId = emoji.getIndex();
-		BufferedImage image = this.resolveEmojiImage(emoji, emojiId, visibleEmojiIds);
+		BufferedImage image = isAnimated
+			? this.resolveEmojiImage(emoji, emojiId, visibleEmojiIds)
+			: this.resolveStaticEmojiImage(emoji, emojiId, visibleEmojiIds);
 		this.drawEmojiImage(graphics, image, position);
 	}
 
+	private int distanceTo(Player localPlayer, Player player)
+	{
+		if (localPlayer == null || player == localPlayer)
+		{
+			return 0;
+		}
+
+		WorldPoint localLocation = localPlayer.getWorldLocation();
+		WorldPoint location = player.getWorldLocation();
+		if (localLocation == null || location == null)
+		{
+			return Integer.MAX_VALUE;
+		}
+
+		return localLocation.distanceTo(location);
+	}
+
 	private boolean shouldShowOverheadForPlayer(Player player)
 	{
 		boolean isLocalPlayer = player == this.client.getLocalPlayer();
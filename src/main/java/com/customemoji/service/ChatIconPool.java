@@ -0,0 +1,293 @@
+package com.customemoji.service;
+
+import com.customemoji.CustomEmojiConfig;
+import com.customemoji.model.Emoji;
+import com.customemoji.model.Lifecycle;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.api.MessageNode;
+import net.runelite.api.Player;
+import net.runelite.api.WorldView;
+import net.runelite.client.callback.ClientThread;
+import net.runelite.client.game.ChatIconManager;
+
+/**
+ * Hands out chat icon slots to emojis the first time they are used in a message, instead of
+ * reserving one for every emoji in the pack. Slots that no chat line or overhead text refers
+ * to anymore are reclaimed and reused, so the client's icon array grows with the emojis on
+ * screen rather than with the pack size.
+ */
+@Slf4j
+@Singleton
+public class ChatIconPool implements Lifecycle
+{
+	private static final String IMG_TAG_PREFIX = "<img=";
+	// Covers text that is about to be set, like the rest of a message still being rewritten
+	private static final long RECLAIM_GRACE_NANOS = TimeUnit.SECONDS.toNanos(10);
+	private static final long RECLAIM_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private static class Slot
+	{
+		private final int reservedId;
+		private final int imageId;
+		private boolean isZeroWidth;
+		private Emoji emoji;
+		private long lastAcquiredNanos;
+
+		Slot(int reservedId, int imageId)
+		{
+			this.reservedId = reservedId;
+			this.imageId = imageId;
+		}
+	}
+
+	@Inject
+	private Client client;
+
+	@Inject
+	private ClientThread clientThread;
+
+	@Inject
+	private ChatIconManager chatIconManager;
+
+	private final Map<String, Slot> baseSlots = new HashMap<>();
+	private final Map<String, Slot> zeroWidthSlots = new HashMap<>();
+	private final Deque<Slot> freeSlots = new ArrayDeque<>();
+	private final Map<Integer, Emoji> emojisByImageId = new ConcurrentHashMap<>();
+	private final Map<Dimension, BufferedImage> placeholderImages = new HashMap<>();
+	private int reservedCount;
+	private long lastReclaimNanos;
+
+	@Override
+	public void startUp()
+	{
+	}
+
+	@Override
+	public void shutDown()
+	{
+		// Reserved slots cannot be given back to the client, keep them for the next start.
+		// Released on the client thread, after chat has been reverted to text.
+		this.clientThread.invoke(this::releaseAll);
+	}
+
+	@Override
+	public boolean isEnabled(CustomEmojiConfig config)
+	{
+		return true;
+	}
+
+	/**
+	 * Returns the image id to use in an {@code <img=>} tag for the emoji, assigning a slot
+	 * on first use. Must be called on the client thread.
+	 */
+	public synchronized int acquireImageId(Emoji emoji, boolean isZeroWidth)
+	{
+		if (!this.client.isClientThread())
+		{
+			throw new IllegalStateException("Chat icon slots must be acquired on the client thread");
+		}
+
+		Map<String, Slot> slots = isZeroWidth ? this.zeroWidthSlots : this.baseSlots;
+		Slot slot = slots.get(emoji.getText());
+		if (slot == null)
+		{
+			slot = this.takeFreeSlot();
+			slot.isZeroWidth = isZeroWidth;
+			slots.put(emoji.getText(), slot);
+			this.bind(slot, emoji);
+		}
+		else if (slot.emoji != emoji)
+		{
+			this.bind(slot, emoji);
+		}
+
+		slot.lastAcquiredNanos = System.nanoTime();
+		return slot.imageId;
+	}
+
+	/**
+	 * Moves the slots of an emoji that was reloaded to its new instance, so tags already in
+	 * chat keep pointing at it and the placeholder matches its new size.
+	 */
+	public synchronized void updateEmoji(Emoji emoji)
+	{
+		Slot slot = this.baseSlots.get(emoji.getText());
+		if (slot != null)
+		{
+			this.bind(slot, emoji);
+		}
+
+		Slot zeroWidthSlot = this.zeroWidthSlots.get(emoji.getText());
+		if (zeroWidthSlot != null)
+		{
+			this.bind(zeroWidthSlot, emoji);
+		}
+	}
+
+	/**
+	 * Emojis that currently hold a slot, keyed by the image id used in chat tags.
+	 */
+	public Map<Integer, Emoji> getEmojisByImageId()
+	{
+		return Collections.unmodifiableMap(this.emojisByImageId);
+	}
+
+	private void bind(Slot slot, Emoji emoji)
+	{
+		slot.emoji = emoji;
+		Dimension dimension = emoji.getDimension();
+		int width = slot.isZeroWidth ? 1 : dimension.width;
+		this.chatIconManager.updateChatIcon(slot.reservedId, this.placeholderOf(width, dimension.height));
+
+		if (slot.isZeroWidth)
+		{
+			emoji.setZeroWidthIconId(slot.imageId);
+		}
+		else
+		{
+			emoji.setIconId(slot.imageId);
+		}
+		this.emojisByImageId.put(slot.imageId, emoji);
+	}
+
+	private Slot takeFreeSlot()
+	{
+		long now = System.nanoTime();
+		boolean canReclaim = this.freeSlots.isEmpty() && now - this.lastReclaimNanos >= RECLAIM_INTERVAL_NANOS;
+		if (canReclaim)
+		{
+			this.lastReclaimNanos = now;
+			this.reclaimUnusedSlots(now);
+		}
+
+		Slot slot = this.freeSlots.poll();
+		if (slot != null)
+		{
+			return slot;
+		}
+
+		int reservedId = this.chatIconManager.reserveChatIcon();
+		this.reservedCount++;
+		return new Slot(reservedId, this.chatIconManager.chatIconIndex(reservedId));
+	}
+
+	private void reclaimUnusedSlots(long now)
+	{
+		Set<Integer> referencedImageIds = this.collectReferencedImageIds();
+		int reclaimedCount = this.reclaimFrom(this.baseSlots, referencedImageIds, now) + this.reclaimFrom(this.zeroWidthSlots, referencedImageIds, now);
+		log.debug("Reclaimed {} of {} chat icon slots", reclaimedCount, this.reservedCount);
+	}
+
+	private int reclaimFrom(Map<String, Slot> slots, Set<Integer> referencedImageIds, long now)
+	{
+		int reclaimedCount = 0;
+		Iterator<Slot> iterator = slots.values().iterator();
+		while (iterator.hasNext())
+		{
+			Slot slot = iterator.next();
+			boolean isUnused = !referencedImageIds.contains(slot.imageId) && now - slot.lastAcquiredNanos >= RECLAIM_GRACE_NANOS;
+			if (isUnused)
+			{
+				iterator.remove();
+				this.release(slot);
+				reclaimedCount++;
+			}
+		}
+		return reclaimedCount;
+	}
+
+	private synchronized void releaseAll()
+	{
+		this.baseSlots.values().forEach(this::release);
+		this.zeroWidthSlots.values().forEach(this::release);
+		this.baseSlots.clear();
+		this.zeroWidthSlots.clear();
+	}
+
+	private void release(Slot slot)
+	{
+		if (slot.isZeroWidth)
+		{
+			slot.emoji.setZeroWidthIconId(-1);
+		}
+		else
+		{
+			slot.emoji.setIconId(-1);
+		}
+		this.emojisByImageId.remove(slot.imageId);
+		slot.emoji = null;
+		this.freeSlots.add(slot);
+	}
+
+	private Set<Integer> collectReferencedImageIds()
+	{
+		Set<Integer> imageIds = new HashSet<>();
+		for (MessageNode messageNode : this.client.getMessages())
+		{
+			ChatIconPool.addImageIds(messageNode.getValue(), imageIds);
+		}
+
+		WorldView topLevel = this.client.getTopLevelWorldView();
+		if (topLevel != null)
+		{
+			for (Player player : topLevel.players())
+			{
+				ChatIconPool.addImageIds(player.getOverheadText(), imageIds);
+			}
+		}
+		return imageIds;
+	}
+
+	private static void addImageIds(String text, Set<Integer> imageIds)
+	{
+		if (text == null)
+		{
+			return;
+		}
+
+		int start = text.indexOf(IMG_TAG_PREFIX);
+		while (start >= 0)
+		{
+			int idStart = start + IMG_TAG_PREFIX.length();
+			int end = text.indexOf('>', idStart);
+			if (end < 0)
+			{
+				return;
+			}
+
+			try
+			{
+				imageIds.add(Integer.parseInt(text.substring(idStart, end)));
+			}
+			catch (NumberFormatException e)
+			{
+				// Not an image tag we handed out
+			}
+			start = text.indexOf(IMG_TAG_PREFIX, end);
+		}
+	}
+
+	private BufferedImage placeholderOf(int width, int height)
+	{
+		// The chat icon manager copies it into its own sprite, so one image per size is shared
+		return this.placeholderImages.computeIfAbsent(new Dimension(width, height), size -> new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB));
+	}
+}
@@ -1,23 +1,31 @@
 package com.customemoji.service;
 
 import com.customemoji.CustomEmojiConfig;
+import com.customemoji.animation.AnimationCacheStats;
+import com.customemoji.animation.AnimationManager;
+import com.customemoji.animation.FrameLoadQueueStats;
 import com.customemoji.CustomEmojiConfig.DisabledEmojiFilterMode;
 import com.customemoji.event.AfterEmojisLoaded;
 import com.customemoji.event.AfterSoundojisLoaded;
 import com.customemoji.event.BeforeEmojisLoaded;
 import com.customemoji.event.EmojiStateChanged;
+import com.customemoji.event.EmojisChanged;
+import com.customemoji.event.EmojisRegistered;
 import com.customemoji.event.GitHubDownloadCompleted;
 import com.customemoji.event.GitHubDownloadStarted;
 import com.customemoji.event.SoundojiTriggered;
 import com.customemoji.io.EmojiLoader;
 import com.customemoji.io.GitHubEmojiDownloader;
+import com.customemoji.model.AnimatedEmoji;
 import com.customemoji.model.Emoji;
 import com.customemoji.model.Lifecycle;
 import com.customemoji.model.Soundoji;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
 
@@ -40,7 +48,6 @@ import net.runelite.client.callback.ClientThread;
 import net.runelite.client.eventbus.EventBus;
 import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.events.ConfigChanged;
-import net.runelite.client.game.ChatIconManager;
 import net.runelite.client.util.Text;
 
 @Slf4j
@@ -48,10 +55,13 @@ import net.runelite.client.util.Text;
 public class EmojiMessageManager implements Lifecycle
 {
 	public static final String EMOJI_ERROR_COMMAND = "emojierror";
+	public static final String EMOJI_STATS_COMMAND = "emojistats";
 
 	private static final Pattern WHITESPACE_REGEXP = Pattern.compile("[\\s\\u00A0]");
 	private static final String IMG_TAG_PREFIX = "<img=";
 	private static final String UNKNOWN_EMOJI_PLACEHOLDER = "[?]";
+	private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+	private static final long REGISTERED_REWRITE_INTERVAL_MS = 250;
 
 	@Inject
 	private EventBus eventBus;
@@ -63,7 +73,7 @@ public class EmojiMessageManager implements Lifecycle
 	private ClientThread clientThread;
 
 	@Inject
-	private ChatIconManager chatIconManager;
+	private ChatIconPool chatIconPool;
 
 	@Inject
 	private CustomEmojiConfig config;
@@ -77,9 +87,16 @@ public class EmojiMessageManager implements Lifecycle
 	@Inject
 	private GitHubEmojiDownloader githubDownloader;
 
+	@Inject
+	private AnimationManager animationManager;
+
 	private Map<String, Emoji> emojis = new HashMap<>();
 	private Map<String, Soundoji> soundojis = new HashMap<>();
 
+	// Only touched on the client thread
+	private final Set<String> pendingRegisteredEmojis = new HashSet<>();
+	private long lastRegisteredRewriteTime;
+
 	@Override
 	public void startUp()
 	{
@@ -89,7 +106,13 @@ public class EmojiMessageManager implements Lifecycle
 	@Override
 	public void shutDown()
 	{
-		this.replaceAllEmojisWithText();
+		// Queued ahead of the icon pool releasing its slots, which also happens on the client thread
+		Map<String, Emoji> shownEmojis = new HashMap<>(this.emojis);
+		this.clientThread.invoke(() ->
+		{
+			this.pendingRegisteredEmojis.clear();
+			this.replaceAllEmojisWithText(shownEmojis);
+		});
 		this.eventBus.unregister(this);
 		this.emojis.clear();
 		this.soundojis.clear();
@@ -105,15 +128,87 @@ public class EmojiMessageManager implements Lifecycle
 	public void onBeforeEmojisLoaded(BeforeEmojisLoaded event)
 	{
 		event.registerParticipant();
-		this.replaceAllEmojisWithText(event.getOldEmojis());
-		event.markComplete();
+		this.clientThread.invoke(() ->
+		{
+			try
+			{
+				this.pendingRegisteredEmojis.clear();
+				this.replaceAllEmojisWithText(event.getOldEmojis());
+			}
+			finally
+			{
+				event.markComplete();
+			}
+		});
 	}
 
 	@Subscribe
 	public void onAfterEmojisLoaded(AfterEmojisLoaded event)
 	{
 		this.emojis = event.getEmojis();
-		this.replaceAllTextWithEmojis();
+		this.clientThread.invoke(this::replaceAllTextWithEmojis);
+	}
+
+	@Subscribe
+	public void onEmojisRegistered(EmojisRegistered event)
+	{
+		this.emojis = event.getEmojis();
+		if (this.githubDownloader.isDownloading.get())
+		{
+			return;
+		}
+
+		// Batches arrive every few milliseconds while registering, so their rewrites are coalesced
+		boolean isRewriteScheduled = !this.pendingRegisteredEmojis.isEmpty();
+		this.pendingRegisteredEmojis.addAll(event.getRegisteredEmojis());
+		if (!isRewriteScheduled)
+		{
+			this.clientThread.invokeLater(this::rewritePendingRegisteredEmojis);
+		}
+	}
+
+	/**
+	 * Rewrites the messages that were waiting on any of the emojis registered since the last
+	 * rewrite, at most once every {@value #REGISTERED_REWRITE_INTERVAL_MS} ms. Returns false
+	 * to be run again on a later client frame.
+	 */
+	private boolean rewritePendingRegisteredEmojis()
+	{
+		long now = System.currentTimeMillis();
+		if (now - this.lastRegisteredRewriteTime < REGISTERED_REWRITE_INTERVAL_MS)
+		{
+			return false;
+		}
+
+		this.lastRegisteredRewriteTime = now;
+		Set<String> registeredEmojis = new HashSet<>(this.pendingRegisteredEmojis);
+		this.pendingRegisteredEmojis.clear();
+		if (registeredEmojis.isEmpty())
+		{
+			return true;
+		}
+
+		this.processAllChatMessages(message ->
+		{
+			if (!this.containsAnyEmoji(message, registeredEmojis))
+			{
+				return message;
+			}
+
+			String updated = this.updateMessage(message, false, false);
+			return updated != null ? updated : message;
+		});
+		return true;
+	}
+
+	@Subscribe
+	public void onEmojisChanged(EmojisChanged event)
+	{
+		// Replaced emojis keep their icon ids, so only removed ones need reverting
+		if (!event.getRemovedEmojis().isEmpty())
+		{
+			this.replaceAllEmojisWithText(event.getRemovedEmojis());
+		}
 	}
 
 	@Subscribe
@@ -125,13 +220,13 @@ public class EmojiMessageManager implements Lifecycle
 	@Subscribe
 	public void onGitHubDownloadStarted(GitHubDownloadStarted event)
 	{
-		this.replaceAllEmojisWithText();
+		this.clientThread.invoke(this::replaceAllEmojisWithText);
 	}
 
 	@Subscribe
 	public void onGitHubDownloadCompleted(GitHubDownloadCompleted event)
 	{
-		this.replaceAllTextWithEmojis();
+		this.clientThread.invoke(this::replaceAllTextWithEmojis);
 	}
 
 	@Subscribe
@@ -146,11 +241,36 @@ public class EmojiMessageManager implements Lifecycle
 					this.client.addChatMessage(ChatMessageType.CONSOLE, "", error, null);
 				}
 				break;
+			case EMOJI_STATS_COMMAND:
+				this.printAnimationStats();
+				break;
 			default:
 				break;
 		}
 	}
 
+	private void printAnimationStats()
+	{
+		AnimationCacheStats cache = this.animationManager.getCacheStats();
+		this.addConsoleMessage(String.format("Animation cache: %d hot (%d MB), %d warm (%d MB), %d MB budget",
+			cache.getHotCount(), cache.getHotBytes() / BYTES_PER_MEGABYTE, cache.getWarmCount(), cache.getWarmBytes() / BYTES_PER_MEGABYTE, cache.getBudgetBytes() / BYTES_PER_MEGABYTE));
+		this.addConsoleMessage(String.format("Animation cache: %d hot hits, %d warm hits, %d misses, %d evictions",
+			cache.getHotHits(), cache.getWarmHits(), cache.getMisses(), cache.getEvictions()));
+
+		for (FrameLoadQueueStats queue : this.animationManager.getLoadQueueStats())
+		{
+			this.addConsoleMessage(String.format("Frame loads (%s): %d queued, %d started, %d ms average wait, %d ms longest wait",
+				queue.getPriority(), queue.getQueued(), queue.getStarted(), queue.getAverageWaitMs(), queue.getMaxWaitMs()));
+		}
+
+		this.addConsoleMessage(String.format("Off-heap frames: %d MB", this.animationManager.getOffHeapBytes() / BYTES_PER_MEGABYTE));
+	}
+
+	private void addConsoleMessage(String message)
+	{
+		this.client.addChatMessage(ChatMessageType.CONSOLE, "", message, null);
+	}
+
 	@Subscribe
 	public void onChatMessage(ChatMessage chatMessage)
 	{
@@ -161,7 +281,7 @@ public class EmojiMessageManager implements Lifecycle
 
 		final MessageNode messageNode = chatMessage.getMessageNode();
 		final String message = messageNode.getValue();
-		final String updatedMessage = this.updateMessage(message, true);
+		final String updatedMessage = this.updateMessage(message, true, true);
 		if (updatedMessage == null)
 		{
 			return;
@@ -215,7 +335,7 @@ public class EmojiMessageManager implements Lifecycle
 		}
 
 		final String message = event.getActor().getOverheadText();
-		final String updatedMessage = this.updateMessage(message, false);
+		final String updatedMessage = this.updateMessage(message, false, true);
 
 		if (updatedMessage == null)
 		{
@@ -252,8 +372,11 @@ public class EmojiMessageManager implements Lifecycle
 		{
 			case ENABLED:
 			case DISABLED:
-				this.replaceAllEmojisWithText();
-				this.replaceAllTextWithEmojis();
+				this.clientThread.invoke(() ->
+				{
+					this.replaceAllEmojisWithText();
+					this.replaceAllTextWithEmojis();
+				});
 				break;
 			default:
 				break;
@@ -265,17 +388,20 @@ public class EmojiMessageManager implements Lifecycle
 		this.replaceAllEmojisWithText(this.emojis);
 	}
 
+	/**
+	 * Must run on the client thread, since it reads chat and assigns chat icon slots.
+	 */
 	public void replaceAllTextWithEmojis()
 	{
 		this.processAllChatMessages(message ->
 		{
-			String updated = this.updateMessage(message, false);
+			String updated = this.updateMessage(message, false, false);
 			return updated != null ? updated : message;
 		});
 	}
 
 	@Nullable
-	private String updateMessage(final String message, boolean sound)
+	private String updateMessage(final String message, boolean sound, boolean prewarm)
 	{
 		final String[] messageWords = WHITESPACE_REGEXP.split(message);
 
@@ -293,6 +419,10 @@ public class EmojiMessageManager implements Lifecycle
 				messageWords[i] = messageWords[i].replace(trigger, IMG_TAG_PREFIX + imageId + ">");
 				editedMessage = true;
 				previousWasEmoji = true;
+				if (prewarm && emoji instanceof AnimatedEmoji)
+				{
+					this.animationManager.prewarmAnimation((AnimatedEmoji) emoji);
+				}
 				log.debug("Replacing {} with emoji {}", trigger, emoji.getText());
 			}
 			else
@@ -320,9 +450,22 @@ public class EmojiMessageManager implements Lifecycle
 		return String.join(" ", messageWords);
 	}
 
+	private boolean containsAnyEmoji(String message, Set<String> emojiNames)
+	{
+		for (String word : WHITESPACE_REGEXP.split(message))
+		{
+			if (emojiNames.contains(Text.removeFormattingTags(word).toLowerCase()))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private boolean shouldUpdateChatMessage(ChatMessageType type)
 	{
-		if (this.emojiLoader.isLoading.get() || this.githubDownloader.isDownloading.get())
+		// Emojis are used as soon as they are registered, even while the rest are still loading
+		if (this.githubDownloader.isDownloading.get())
 		{
 			return false;
 		}
@@ -389,11 +532,8 @@ public class EmojiMessageManager implements Lifecycle
 
 	private int getImageIdForEmoji(Emoji emoji, boolean previousWasEmoji)
 	{
-		if (emoji.hasZeroWidthId() && previousWasEmoji)
-		{
-			return this.chatIconManager.chatIconIndex(emoji.getZeroWidthIndex());
-		}
-		return this.chatIconManager.chatIconIndex(emoji.getIndex());
+		boolean isZeroWidth = emoji.hasZeroWidthId() && previousWasEmoji;
+		return this.chatIconPool.acquireImageId(emoji, isZeroWidth);
 	}
 
 	private void replaceAllEmojisWithText(Map<String, Emoji> emojisToReplace)
@@ -414,14 +554,18 @@ public class EmojiMessageManager implements Lifecycle
 
 	private String replaceEmojiTagsWithText(String message, Emoji emoji, String replacement)
 	{
-		int imageId = this.chatIconManager.chatIconIndex(emoji.getIndex());
-		String imageTag = IMG_TAG_PREFIX + imageId + ">";
-
-		String updated = message.replace(imageTag, replacement);
+		// Emojis without a chat icon slot cannot appear in any message
+		String updated = message;
+		int imageId = emoji.getIconId();
+		if (imageId >= 0)
+		{
+			String imageTag = IMG_TAG_PREFIX + imageId + ">";
+			updated = updated.replace(imageTag, replacement);
+		}
 
-		if (emoji.hasZeroWidthId())
+		int zeroWidthId = emoji.getZeroWidthIconId();
+		if (zeroWidthId >= 0)
 		{
-			int zeroWidthId = this.chatIconManager.chatIconIndex(emoji.getZeroWidthIndex());
 			String zeroWidthTag = IMG_TAG_PREFIX + zeroWidthId + ">";
 			updated = updated.replace(zeroWidthTag, replacement);
 		}
@@ -432,6 +576,7 @@ public class EmojiMessageManager implements Lifecycle
 	private void processAllChatMessages(UnaryOperator<String> transformer)
 	{
 		IterableHashTable<MessageNode> messages = this.client.getMessages();
+		boolean hasChanges = false;
 		for (MessageNode messageNode : messages)
 		{
 			ChatMessageType type = messageNode.getType();
@@ -445,10 +590,14 @@ public class EmojiMessageManager implements Lifecycle
 				{
 					messageNode.setValue(updatedValue);
 					messageNode.setRuneLiteFormatMessage(messageNode.getValue());
+					hasChanges = true;
 				}
 			}
 		}
 
-		this.client.refreshChat();
+		if (hasChanges)
+		{
+			this.client.refreshChat();
+		}
 	}
 }
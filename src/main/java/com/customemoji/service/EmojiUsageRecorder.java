@@ -18,8 +18,13 @@ import net.runelite.client.util.Text;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.time.Year;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Slf4j
 @Singleton
@@ -37,6 +42,9 @@ public class EmojiUsageRecorder implements Lifecycle
 	@Inject
 	private EventBus eventBus;
 
+	@Inject
+	private CustomEmojiConfig config;
+
 	@Inject
 	public EmojiUsageRecorder(ConfigManager configManager, Client client)
 	{
@@ -92,6 +100,59 @@ public class EmojiUsageRecorder implements Lifecycle
 		this.recordUsage(message);
 	}
 
+	/**
+	 * Emoji names worth decoding first: animations that were on screen at the last
+	 * shutdown, then emojis by how often the local player used them this year and last.
+	 */
+	public List<String> getPrewarmOrder()
+	{
+		Set<String> names = new LinkedHashSet<>();
+		for (String name : this.config.lastVisibleAnimations().split(","))
+		{
+			String trimmed = name.trim();
+			if (!trimmed.isEmpty())
+			{
+				names.add(trimmed);
+			}
+		}
+
+		int year = Year.now().getValue();
+		Map<String, Integer> counts = new HashMap<>();
+		this.addUsageCounts(year, counts);
+		this.addUsageCounts(year - 1, counts);
+
+		List<String> mostUsed = new ArrayList<>(counts.keySet());
+		mostUsed.sort(Comparator.comparing((String name) -> counts.get(name)).reversed());
+		names.addAll(mostUsed);
+
+		return new ArrayList<>(names);
+	}
+
+	/**
+	 * Remembers which animations were on screen, most recent first, for the next startup.
+	 */
+	public void recordVisibleAnimations(List<String> emojiNames)
+	{
+		String serialized = String.join(",", emojiNames);
+		this.configManager.setConfiguration(CustomEmojiConfig.KEY_CONFIG_GROUP, CustomEmojiConfig.KEY_LAST_VISIBLE_ANIMATIONS, serialized);
+	}
+
+	private void addUsageCounts(int year, Map<String, Integer> counts)
+	{
+		String keyPrefix = USAGE_KEY_PREFIX + year + "_";
+		List<String> keys = this.configManager.getConfigurationKeys(CustomEmojiConfig.KEY_CONFIG_GROUP + "." + keyPrefix);
+
+		for (String key : keys)
+		{
+			String emojiName = key.substring(key.indexOf(keyPrefix) + keyPrefix.length());
+			String value = this.configManager.getConfiguration(CustomEmojiConfig.KEY_CONFIG_GROUP, keyPrefix + emojiName);
+			if (value != null)
+			{
+				counts.merge(emojiName, Integer.parseInt(value), Integer::sum);
+			}
+		}
+	}
+
 	private boolean isRecordableMessageType(ChatMessageType type)
 	{
 		return type == ChatMessageType.PUBLICCHAT
@@ -11,6 +11,7 @@ import com.customemoji.ChatSpacingManager;
 import com.customemoji.CustomEmojiConfig;
 import com.customemoji.CustomEmojiOverlay;
 import com.customemoji.CustomEmojiTooltip;
+import com.customemoji.animation.AnimationGovernor;
 import com.customemoji.animation.AnimationManager;
 import com.customemoji.io.EmojiLoader;
 import com.customemoji.io.GitHubEmojiDownloader;
@@ -39,6 +40,7 @@ public class LifecycleManager
 	@Inject
 	public LifecycleManager
 	(
+		AnimationGovernor animationGovernor,
 		AnimationManager animationManager,
 		GitHubEmojiDownloader githubDownloader,
 		EmojiUsageRecorder usageRecorder,
@@ -48,6 +50,7 @@ public class LifecycleManager
 		ChatSpacingManager chatSpacingManager,
 		ChatScrollingManager chatScrollingManager,
 		SeasonalEmojiManager seasonalEmojiManager,
+		ChatIconPool chatIconPool,
 		EmojiLoader emojiLoader,
 		SoundojiLoader soundojiLoader,
 		SoundojiPlayer soundojiPlayer,
@@ -58,6 +61,7 @@ public class LifecycleManager
 		EmojiPanelManager emojiPanelManager
 	)
 	{
+		this.managedObjects.put(animationGovernor, false);
 		this.managedObjects.put(animationManager, false);
 		this.managedObjects.put(githubDownloader, false);
 		this.managedObjects.put(usageRecorder, false);
@@ -67,6 +71,7 @@ public class LifecycleManager
 		this.managedObjects.put(chatSpacingManager, false);
 		this.managedObjects.put(chatScrollingManager, false);
 		this.managedObjects.put(seasonalEmojiManager, false);
+		this.managedObjects.put(chatIconPool, false);
 		this.managedObjects.put(emojiLoader, false);
 		this.managedObjects.put(soundojiLoader, false);
 		this.managedObjects.put(soundojiPlayer, false);
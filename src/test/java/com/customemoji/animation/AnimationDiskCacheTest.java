@@ -0,0 +1,112 @@
+package com.customemoji.animation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AnimationDiskCacheTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void read_afterWrite_returnsSameFrames() throws IOException
+    {
+        AnimationDiskCache cache = new AnimationDiskCache(this.temporaryFolder.getRoot());
+        int[] indexedPixels = {0xFFFF0000, 0xFF00FF00, 0xFFFF0000, 0x00000000};
+        int[] rawPixels = new int[20 * 20];
+        for (int i = 0; i < rawPixels.length; i++)
+        {
+            rawPixels[i] = 0xFF000000 | (i * 7919);
+        }
+        List<IndexedFrame> frames = Arrays.asList(
+            IndexedFrame.encode(indexedPixels, 2, 2, 40),
+            IndexedFrame.encode(rawPixels, 20, 20, 70));
+
+        cache.write("pepe", "abc", new DecodedFrames(frames, 3));
+        DecodedFrames decoded = cache.read("pepe", "abc");
+        List<IndexedFrame> restored = decoded.getFrames();
+
+        assertEquals(3, decoded.getPlayCount());
+        assertEquals(2, restored.size());
+        assertEquals(40, restored.get(0).getDelayMs());
+        assertEquals(70, restored.get(1).getDelayMs());
+
+        int[] restoredPixels = new int[rawPixels.length];
+        restored.get(1).writeTo(restoredPixels);
+        assertTrue(Arrays.equals(rawPixels, restoredPixels));
+    }
+
+    @Test
+    public void write_newKey_removesOlderEntry() throws IOException
+    {
+        AnimationDiskCache cache = new AnimationDiskCache(this.temporaryFolder.getRoot());
+        List<IndexedFrame> frames = List.of(IndexedFrame.encode(new int[]{0xFFFFFFFF}, 1, 1, 100));
+
+        cache.write("pepe", "old", new DecodedFrames(frames, GifLayout.PLAY_FOREVER));
+        cache.write("pepe", "new", new DecodedFrames(frames, GifLayout.PLAY_FOREVER));
+
+        assertNull(cache.read("pepe", "old"));
+        assertEquals(1, cache.read("pepe", "new").getFrames().size());
+    }
+
+    @Test
+    public void read_corruptFile_returnsNullAndDeletesIt() throws IOException
+    {
+        AnimationDiskCache cache = new AnimationDiskCache(this.temporaryFolder.getRoot());
+        File corrupt = new File(this.temporaryFolder.getRoot(), "pepe-abc.frames");
+        Files.write(corrupt.toPath(), new byte[]{1, 2, 3});
+
+        assertNull(cache.read("pepe", "abc"));
+        assertFalse(corrupt.exists());
+    }
+
+    @Test
+    public void createKey_differentResizeSettings_differ()
+    {
+        AnimationDiskCache cache = new AnimationDiskCache(this.temporaryFolder.getRoot());
+        byte[] data = {1, 2, 3};
+
+        assertNotEquals(cache.createKey(data, 24, true, false, DecodeLimits.UNLIMITED), cache.createKey(data, 24, false, false, DecodeLimits.UNLIMITED));
+        assertNotEquals(cache.createKey(data, 24, true, false, DecodeLimits.UNLIMITED), cache.createKey(data, 32, true, false, DecodeLimits.UNLIMITED));
+    }
+
+    @Test
+    public void createKey_differentLimitsOrLoadingMode_differ()
+    {
+        AnimationDiskCache cache = new AnimationDiskCache(this.temporaryFolder.getRoot());
+        byte[] data = {1, 2, 3};
+        DecodeLimits limits = new DecodeLimits(1_000_000L, 100, 64L * 1024 * 1024, 5000L);
+        DecodeLimits fewerFrames = new DecodeLimits(1_000_000L, 50, 64L * 1024 * 1024, 5000L);
+
+        assertNotEquals(cache.createKey(data, 24, true, false, limits), cache.createKey(data, 24, true, true, limits));
+        assertNotEquals(cache.createKey(data, 24, true, false, limits), cache.createKey(data, 24, true, false, fewerFrames));
+    }
+
+    @Test
+    public void prune_removesEntriesForMissingEmojis() throws IOException
+    {
+        AnimationDiskCache cache = new AnimationDiskCache(this.temporaryFolder.getRoot());
+        List<IndexedFrame> frames = List.of(IndexedFrame.encode(new int[]{0xFFFFFFFF}, 1, 1, 100));
+        cache.write("kept", "abc", new DecodedFrames(frames, GifLayout.PLAY_FOREVER));
+        cache.write("removed", "abc", new DecodedFrames(frames, GifLayout.PLAY_FOREVER));
+
+        cache.prune(Set.of("kept"));
+
+        assertEquals(1, cache.read("kept", "abc").getFrames().size());
+        assertNull(cache.read("removed", "abc"));
+    }
+}
@@ -0,0 +1,269 @@
+package com.customemoji.animation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.Test;
+
+public class GifAnimationTest
+{
+    private static final int RED = 0xFFFF0000;
+    private static final int BLUE = 0xFF0000FF;
+
+    @Test
+    public void advance_afterFirstDelay_showsSecondFrame() throws IOException
+    {
+        GifAnimation animation = new GifAnimation(GifAnimationTest.writeGif(2, RED, BLUE), 24, false, false);
+        assertTrue(animation.initialize());
+        animation.loadAllFrames();
+
+        long start = System.currentTimeMillis();
+        animation.advance(start);
+        assertEquals(RED, animation.getCurrentFrame().getRGB(0, 0));
+
+        animation.advance(start + 150);
+        assertEquals(BLUE, animation.getCurrentFrame().getRGB(0, 0));
+    }
+
+    @Test
+    public void loadAllFrames_withExecutor_composesFramesInOrder() throws IOException
+    {
+        int[] colors = {RED, BLUE, 0xFF00FF00, 0xFFFFFF00, RED, 0xFF00FFFF, BLUE, 0xFFFF00FF, RED, BLUE, 0xFF00FF00, 0xFFFFFFFF};
+        GifAnimation animation = new GifAnimation(GifAnimationTest.writeGif(4, colors), 24, false, false);
+        assertTrue(animation.initialize());
+        animation.loadAllFrames(ForkJoinPool.commonPool());
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < colors.length; i++)
+        {
+            animation.advance(start + i * 100L + 50);
+            assertEquals(colors[i], animation.getCurrentFrame().getRGB(0, 0));
+        }
+    }
+
+    @Test
+    public void initialize_overFrameLimit_refusesToDecode() throws IOException
+    {
+        GifAnimation animation = new GifAnimation(GifAnimationTest.writeGif(2, RED, BLUE, RED), 24, false, true);
+        animation.setDecodeLimits(new DecodeLimits(Long.MAX_VALUE, 2, Long.MAX_VALUE, Long.MAX_VALUE));
+
+        assertFalse(animation.initialize());
+        assertNotNull(animation.getLimitViolation());
+        assertNull(animation.getCurrentFrame());
+    }
+
+    @Test
+    public void initialize_frameLargerThanCanvas_reportsViolation()
+    {
+        byte[] gifData = {
+            'G', 'I', 'F', '8', '9', 'a',
+            1, 0, 1, 0, 0, 0, 0,
+            0x2C, 0, 0, 0, 0, (byte) 0x40, (byte) 0x9C, (byte) 0x40, (byte) 0x9C, 0,
+            2, 0,
+            0x3B
+        };
+        GifAnimation animation = new GifAnimation(gifData, 24, false, true);
+
+        assertFalse(animation.initialize());
+        assertNotNull(animation.getLimitViolation());
+    }
+
+    @Test
+    public void advance_withoutLoopExtension_stopsOnLastFrame() throws IOException
+    {
+        byte[] gifData = GifAnimationTest.writeGifWithLoopCount(-1, 2, RED, BLUE);
+        GifAnimation animation = new GifAnimation(gifData, 24, false, true);
+        assertTrue(animation.initialize());
+        animation.preloadFrames();
+
+        long start = System.currentTimeMillis();
+        animation.advance(start + 150);
+        assertTrue(animation.isFinished());
+
+        animation.advance(start + 1050);
+        assertEquals(BLUE, animation.getCurrentFrame().getRGB(0, 0));
+        assertTrue(animation.getByteSize() < gifData.length);
+    }
+
+    @Test
+    public void advance_withLoopCount_playsRepeatsThenStops() throws IOException
+    {
+        GifAnimation animation = new GifAnimation(GifAnimationTest.writeGifWithLoopCount(1, 2, RED, BLUE), 24, false, false);
+        assertTrue(animation.initialize());
+        animation.loadAllFrames();
+
+        long start = System.currentTimeMillis();
+        animation.advance(start + 250);
+        assertEquals(RED, animation.getCurrentFrame().getRGB(0, 0));
+        assertFalse(animation.isFinished());
+
+        animation.advance(start + 5000);
+        assertEquals(BLUE, animation.getCurrentFrame().getRGB(0, 0));
+        assertTrue(animation.isFinished());
+    }
+
+    @Test
+    public void close_releasesFramesAndDisplayImage() throws IOException
+    {
+        GifAnimation animation = new GifAnimation(GifAnimationTest.writeGif(2, RED, BLUE), 24, false, true);
+        animation.initialize();
+
+        animation.close();
+        animation.advance(System.currentTimeMillis() + 1000);
+
+        assertNull(animation.getCurrentFrame());
+        assertEquals(0, animation.getByteSize());
+    }
+
+    @Test
+    public void close_withOffHeapPool_returnsEveryBuffer() throws IOException
+    {
+        OffHeapFramePool pool = new OffHeapFramePool();
+        GifAnimation animation = new GifAnimation(GifAnimationTest.writeGif(8, RED, BLUE, RED), 24, false, false);
+        animation.setOffHeapPool(pool);
+        assertTrue(animation.initialize());
+        animation.loadAllFrames();
+
+        long start = System.currentTimeMillis();
+        animation.advance(start + 150);
+        assertEquals(BLUE, animation.getCurrentFrame().getRGB(0, 0));
+        assertTrue(pool.getAllocatedBytes() > 0);
+
+        animation.close();
+        assertEquals(0, pool.getAllocatedBytes());
+    }
+
+    @Test
+    public void loadAllFrames_overDecodeTime_stopsAndKeepsDecodedFrames() throws IOException
+    {
+        GifAnimation animation = new GifAnimation(GifAnimationTest.writeGif(2, RED, BLUE, RED), 24, false, false);
+        List<DecodedFrames> cached = new ArrayList<>();
+        animation.setDecodeCompleteListener(cached::add);
+        assertTrue(animation.initialize());
+
+        animation.setDecodeLimits(new DecodeLimits(Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, -1L));
+        animation.loadAllFrames();
+
+        assertNotNull(animation.getLimitViolation());
+        assertNotNull(animation.getCurrentFrame());
+        assertTrue(cached.isEmpty());
+    }
+
+    @Test
+    public void loadAllFrames_longLazyAnimation_stopsWhenWindowIsFull() throws IOException
+    {
+        int[] colors = new int[100];
+        Arrays.fill(colors, RED);
+        GifAnimation animation = new GifAnimation(GifAnimationTest.writeGif(300, colors), 24, false, true);
+        assertTrue(animation.initialize());
+
+        animation.loadAllFrames();
+
+        assertEquals(RED, animation.getCurrentFrame().getRGB(0, 0));
+    }
+
+    @Test
+    public void advance_longLazyAnimation_wrapsAroundWithBoundedMemory() throws IOException
+    {
+        int frameCount = 100;
+        int[] colors = new int[frameCount];
+        for (int i = 0; i < frameCount; i++)
+        {
+            colors[i] = 0xFF000000 | (i << 16) | (i << 8) | i;
+        }
+        byte[] gifData = GifAnimationTest.writeGif(300, colors);
+
+        long start = System.currentTimeMillis();
+        GifAnimation animation = new GifAnimation(gifData, 24, false, true);
+        assertTrue(animation.initialize());
+
+        for (int step = 0; step < frameCount + 20; step++)
+        {
+            animation.preloadFrames();
+            animation.advance(start + step * 100L + 50);
+
+            assertEquals(colors[step % frameCount], animation.getCurrentFrame().getRGB(0, 0));
+            assertTrue(animation.getByteSize() < gifData.length + 2L * 1024 * 1024);
+        }
+    }
+
+    private static byte[] writeGif(int size, int... colors) throws IOException
+    {
+        return GifAnimationTest.writeGifWithLoopCount(0, size, colors);
+    }
+
+    private static byte[] writeGifWithLoopCount(int loopCount, int size, int... colors) throws IOException
+    {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output))
+        {
+            writer.setOutput(imageOutput);
+            writer.prepareWriteSequence(null);
+            for (int i = 0; i < colors.length; i++)
+            {
+                int[] pixels = new int[size * size];
+                Arrays.fill(pixels, colors[i]);
+                BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+                image.setRGB(0, 0, size, size, pixels, 0, size);
+                IIOMetadata metadata = GifAnimationTest.frameMetadata(writer, image, i == 0 ? loopCount : -1);
+                writer.writeToSequence(new IIOImage(image, null, metadata), null);
+            }
+            writer.endWriteSequence();
+        }
+        finally
+        {
+            writer.dispose();
+        }
+
+        return output.toByteArray();
+    }
+
+    private static IIOMetadata frameMetadata(ImageWriter writer, BufferedImage image, int loopCount) throws IOException
+    {
+        IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), null);
+        String format = metadata.getNativeMetadataFormatName();
+
+        IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+        control.setAttribute("disposalMethod", "none");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", "10");
+        control.setAttribute("transparentColorIndex", "0");
+
+        IIOMetadataNode root = new IIOMetadataNode(format);
+        root.appendChild(control);
+        if (loopCount >= 0)
+        {
+            IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+            loop.setAttribute("applicationID", "NETSCAPE");
+            loop.setAttribute("authenticationCode", "2.0");
+            loop.setUserObject(new byte[]{1, (byte) (loopCount & 0xFF), (byte) ((loopCount >> 8) & 0xFF)});
+
+            IIOMetadataNode extensions = new IIOMetadataNode("ApplicationExtensions");
+            extensions.appendChild(loop);
+            root.appendChild(extensions);
+        }
+        metadata.mergeTree(format, root);
+        return metadata;
+    }
+}
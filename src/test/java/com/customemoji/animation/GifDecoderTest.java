@@ -0,0 +1,166 @@
+package com.customemoji.animation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.Test;
+
+public class GifDecoderTest
+{
+    private static final File TEST_GIF = new File("src/test/java/com/customemoji/resources/testgif.gif");
+
+    @Test
+    public void constructor_readsLogicalScreenSize() throws IOException
+    {
+        GifDecoder decoder = new GifDecoder(Files.readAllBytes(TEST_GIF.toPath()));
+
+        assertEquals(128, decoder.getWidth());
+        assertEquals(128, decoder.getHeight());
+    }
+
+    @Test
+    public void readFrame_stopsAtTrailer() throws IOException
+    {
+        GifDecoder decoder = new GifDecoder(Files.readAllBytes(TEST_GIF.toPath()));
+        GifFrame frame = new GifFrame();
+
+        assertTrue(decoder.readFrame(frame));
+        assertEquals(128, frame.getWidth());
+        assertFalse(decoder.readFrame(frame));
+    }
+
+    @Test
+    public void readFrame_afterRewind_readsFirstFrameAgain() throws IOException
+    {
+        GifDecoder decoder = new GifDecoder(Files.readAllBytes(TEST_GIF.toPath()));
+        GifFrame frame = new GifFrame();
+
+        decoder.readFrame(frame);
+        decoder.readFrame(frame);
+        decoder.rewind();
+
+        assertTrue(decoder.readFrame(frame));
+    }
+
+    @Test
+    public void scan_countsFramesWithoutMovingReadPosition() throws IOException
+    {
+        GifDecoder decoder = new GifDecoder(Files.readAllBytes(TEST_GIF.toPath()));
+
+        GifLayout layout = decoder.scan();
+
+        assertEquals(1, layout.getFrameCount());
+        assertTrue(decoder.readFrame(new GifFrame()));
+    }
+
+    @Test
+    public void readFrame_interlacedImage_returnsRowsInDisplayOrder() throws IOException
+    {
+        int height = 11;
+        byte[] gifData = GifDecoderTest.writeRowNumberedGif(height, true);
+
+        GifDecoder decoder = new GifDecoder(gifData);
+        GifFrame frame = new GifFrame();
+        decoder.readFrame(frame);
+
+        for (int row = 0; row < height; row++)
+        {
+            assertEquals(row, frame.getIndices()[row * frame.getWidth()]);
+        }
+    }
+
+    @Test
+    public void compose_opaqueFrame_usesColorTable() throws IOException
+    {
+        byte[] gifData = GifDecoderTest.writeRowNumberedGif(4, false);
+
+        GifDecoder decoder = new GifDecoder(gifData);
+        GifCompositor compositor = new GifCompositor(decoder.getWidth(), decoder.getHeight());
+        GifFrame frame = new GifFrame();
+        decoder.readFrame(frame);
+        compositor.compose(frame);
+
+        int lastRowPixel = compositor.getPixels()[3 * decoder.getWidth()];
+        assertEquals(0xFF030303, lastRowPixel);
+    }
+
+    @Test
+    public void scan_frameLargerThanCanvas_reportsViolation() throws IOException
+    {
+        GifDecoder decoder = new GifDecoder(GifDecoderTest.writeOversizedFrameGif());
+
+        assertNotNull(decoder.scan().getFrameViolation());
+    }
+
+    @Test
+    public void readFrame_frameLargerThanCanvas_throwsBeforeAllocating() throws IOException
+    {
+        GifDecoder decoder = new GifDecoder(GifDecoderTest.writeOversizedFrameGif());
+
+        assertThrows(IOException.class, () -> decoder.readFrame(new GifFrame()));
+    }
+
+    // 1x1 canvas whose only frame descriptor claims 65535x65535 pixels
+    private static byte[] writeOversizedFrameGif()
+    {
+        return new byte[] {
+            'G', 'I', 'F', '8', '9', 'a',
+            1, 0, 1, 0, (byte) 0x80, 0, 0,
+            0, 0, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+            0x2C, 0, 0, 0, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0,
+            2, 0,
+            0x3B
+        };
+    }
+
+    private static byte[] writeRowNumberedGif(int height, boolean interlaced) throws IOException
+    {
+        byte[] levels = new byte[16];
+        for (int i = 0; i < levels.length; i++)
+        {
+            levels[i] = (byte) i;
+        }
+
+        IndexColorModel colorModel = new IndexColorModel(8, levels.length, levels, levels, levels);
+        BufferedImage image = new BufferedImage(3, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < image.getWidth(); x++)
+            {
+                image.getRaster().setSample(x, y, 0, y);
+            }
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output))
+        {
+            writer.setOutput(imageOutput);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setProgressiveMode(interlaced ? ImageWriteParam.MODE_DEFAULT : ImageWriteParam.MODE_DISABLED);
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+        finally
+        {
+            writer.dispose();
+        }
+
+        return output.toByteArray();
+    }
+}
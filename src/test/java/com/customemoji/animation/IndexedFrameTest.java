@@ -0,0 +1,98 @@
+package com.customemoji.animation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class IndexedFrameTest
+{
+    @Test
+    public void writeTo_fewColors_restoresOriginalPixels()
+    {
+        int[] pixels = {0xFFFF0000, 0xFF00FF00, 0xFFFF0000, 0x80000000, 0xFF0000FF, 0xFF00FF00};
+        IndexedFrame frame = IndexedFrame.encode(pixels, 3, 2, 50);
+
+        int[] restored = new int[pixels.length];
+        frame.writeTo(restored);
+
+        assertTrue(Arrays.equals(pixels, restored));
+        assertEquals(50, frame.getDelayMs());
+    }
+
+    @Test
+    public void writeTo_manyColors_restoresOriginalPixels()
+    {
+        int[] pixels = new int[32 * 32];
+        for (int i = 0; i < pixels.length; i++)
+        {
+            pixels[i] = 0xFF000000 | (i * 7919);
+        }
+
+        IndexedFrame frame = IndexedFrame.encode(pixels, 32, 32, 100);
+
+        int[] restored = new int[pixels.length];
+        frame.writeTo(restored);
+
+        assertTrue(Arrays.equals(pixels, restored));
+    }
+
+    @Test
+    public void moveOffHeap_restoresPixelsAndReleasesBuffer()
+    {
+        OffHeapFramePool pool = new OffHeapFramePool();
+        int[] indexedPixels = {0xFFFF0000, 0xFF00FF00, 0xFFFF0000, 0xFF0000FF};
+        int[] rawPixels = new int[32 * 32];
+        for (int i = 0; i < rawPixels.length; i++)
+        {
+            rawPixels[i] = 0xFF000000 | (i * 7919);
+        }
+
+        IndexedFrame indexed = IndexedFrame.encode(indexedPixels, 2, 2, 40).moveOffHeap(pool);
+        IndexedFrame raw = IndexedFrame.encode(rawPixels, 32, 32, 40).moveOffHeap(pool);
+        assertTrue(indexed.isOffHeap() && raw.isOffHeap());
+
+        int[] restored = new int[rawPixels.length];
+        raw.writeTo(restored);
+        assertTrue(Arrays.equals(rawPixels, restored));
+
+        ByteBuffer serialized = ByteBuffer.allocate(indexed.getSerializedSize());
+        indexed.serialize(serialized);
+        serialized.flip();
+        int[] restoredIndexed = new int[indexedPixels.length];
+        IndexedFrame.deserialize(serialized).writeTo(restoredIndexed);
+        assertTrue(Arrays.equals(indexedPixels, restoredIndexed));
+
+        indexed.release(pool);
+        raw.release(pool);
+        assertEquals(0, pool.getAllocatedBytes());
+    }
+
+    @Test
+    public void encode_fewColors_usesOneBytePerPixel()
+    {
+        int[] pixels = new int[64 * 64];
+        Arrays.fill(pixels, 0xFF123456);
+
+        IndexedFrame frame = IndexedFrame.encode(pixels, 64, 64, 100);
+
+        assertTrue(frame.getByteSize() < pixels.length * 2L);
+    }
+
+    @Test
+    public void writeTo_transparentPixels_areCleared()
+    {
+        int[] pixels = {0x00FFFFFF, 0x00123456, 0xFFFFFFFF};
+        IndexedFrame frame = IndexedFrame.encode(pixels, 3, 1, 100);
+
+        int[] restored = new int[pixels.length];
+        frame.writeTo(restored);
+
+        assertEquals(0, restored[0]);
+        assertEquals(0, restored[1]);
+        assertEquals(0xFFFFFFFF, restored[2]);
+    }
+}
@@ -0,0 +1,91 @@
+package com.customemoji.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EmojiManifestTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void find_afterSaveAndReload_returnsSameEntry() throws IOException
+    {
+        File root = this.temporaryFolder.getRoot();
+        File manifestFile = new File(root, ".cache/manifest.bin");
+        File imageFile = this.temporaryFolder.newFile("pepe.png");
+        Files.write(imageFile.toPath(), new byte[]{1, 2, 3});
+
+        EmojiManifest manifest = new EmojiManifest(manifestFile, root);
+        manifest.put(imageFile, 24, true, true, new Dimension(3, 2), "as a static image: too large");
+        manifest.save(Set.of(imageFile));
+
+        EmojiManifest reloaded = new EmojiManifest(manifestFile, root);
+        reloaded.loadIfNeeded();
+        EmojiManifest.Entry entry = reloaded.find(imageFile, 24, true);
+
+        assertNotNull(entry);
+        assertTrue(entry.isAnimated());
+        assertEquals(new Dimension(3, 2), entry.getDimension());
+        assertEquals("as a static image: too large", entry.getDemotionReason());
+    }
+
+    @Test
+    public void find_touchedButUnchangedAfterSave_returnsEntry() throws IOException
+    {
+        File root = this.temporaryFolder.getRoot();
+        File imageFile = this.temporaryFolder.newFile("pepe.png");
+        Files.write(imageFile.toPath(), new byte[]{1, 2, 3});
+        Files.setLastModifiedTime(imageFile.toPath(), FileTime.fromMillis(1_000_000L));
+
+        EmojiManifest manifest = new EmojiManifest(new File(root, "manifest.bin"), root);
+        manifest.put(imageFile, 24, true, false, new Dimension(1, 1), null);
+        manifest.save(Set.of(imageFile));
+        Files.setLastModifiedTime(imageFile.toPath(), FileTime.fromMillis(2_000_000L));
+
+        assertNotNull(manifest.find(imageFile, 24, true));
+    }
+
+    @Test
+    public void find_changedContentOrSettings_returnsNull() throws IOException
+    {
+        File root = this.temporaryFolder.getRoot();
+        File imageFile = this.temporaryFolder.newFile("pepe.png");
+        Files.write(imageFile.toPath(), new byte[]{1, 2, 3});
+
+        EmojiManifest manifest = new EmojiManifest(new File(root, "manifest.bin"), root);
+        manifest.put(imageFile, 24, true, false, new Dimension(1, 1), null);
+
+        assertNull(manifest.find(imageFile, 32, true));
+        assertNull(manifest.find(imageFile, 24, false));
+
+        Files.write(imageFile.toPath(), new byte[]{1, 2, 3, 4});
+        assertNull(manifest.find(imageFile, 24, true));
+    }
+
+    @Test
+    public void find_notResizedWithOtherMaxHeight_returnsEntry() throws IOException
+    {
+        File root = this.temporaryFolder.getRoot();
+        File imageFile = this.temporaryFolder.newFile("pepe.png");
+        Files.write(imageFile.toPath(), new byte[]{1, 2, 3});
+
+        EmojiManifest manifest = new EmojiManifest(new File(root, "manifest.bin"), root);
+        manifest.put(imageFile, 24, false, false, new Dimension(1, 1), null);
+
+        assertNotNull(manifest.find(imageFile, 32, false));
+    }
+}
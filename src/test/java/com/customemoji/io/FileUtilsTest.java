@@ -0,0 +1,125 @@
+package com.customemoji.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.Test;
+
+public class FileUtilsTest
+{
+    private static final File TEST_GIF = new File("src/test/java/com/customemoji/resources/testgif.gif");
+
+    @Test
+    public void probeImage_singleFrameGif_isNotAnimated()
+    {
+        FileUtils.ImageProbe probe = FileUtils.probeImage(TEST_GIF, Long.MAX_VALUE);
+
+        assertFalse(probe.isAnimated());
+        assertEquals(128, probe.getDimension().width);
+        assertEquals(128, probe.getFirstImage().getWidth());
+    }
+
+    @Test
+    public void probeImage_twoFrameGif_isAnimated() throws IOException
+    {
+        File file = File.createTempFile("probe", ".gif");
+        file.deleteOnExit();
+        FileUtilsTest.writeFrames(file, 2);
+
+        FileUtils.ImageProbe probe = FileUtils.probeImage(file, Long.MAX_VALUE);
+
+        assertTrue(probe.isAnimated());
+        assertEquals(4, probe.getFirstImage().getWidth());
+    }
+
+    @Test
+    public void probeImage_overPixelLimit_subsamplesFirstImageButKeepsCanvas()
+    {
+        FileUtils.ImageProbe probe = FileUtils.probeImage(TEST_GIF, 64 * 64);
+
+        assertEquals(128, probe.getDimension().width);
+        assertEquals(64, probe.getFirstImage().getWidth());
+    }
+
+    @Test
+    public void scanFolder_nestedFolders_keepsListingOrderAndReadsAttributes() throws IOException
+    {
+        Path root = Files.createTempDirectory("scan");
+        Path nested = Files.createDirectories(root.resolve("a").resolve("b"));
+        Path deep = Files.write(nested.resolve("deep.png"), new byte[3]);
+        Files.write(root.resolve("top.png"), new byte[5]);
+        Files.write(root.resolve("ignored.txt"), new byte[1]);
+        Files.setLastModifiedTime(deep, FileTime.fromMillis(1_000_000L));
+
+        List<FileUtils.ScannedFile> scanned = FileUtils.scanFolder(root.toFile(), file -> file.getName().endsWith(".png"), ForkJoinPool.commonPool());
+
+        List<String> expectedOrder = new ArrayList<>();
+        for (File file : root.toFile().listFiles())
+        {
+            if (file.isDirectory())
+            {
+                expectedOrder.add("deep.png");
+            }
+            else if (file.getName().endsWith(".png"))
+            {
+                expectedOrder.add(file.getName());
+            }
+        }
+        List<String> names = new ArrayList<>();
+        for (FileUtils.ScannedFile file : scanned)
+        {
+            names.add(file.getFile().getName());
+        }
+        assertEquals(expectedOrder, names);
+
+        FileUtils.ScannedFile deepFile = scanned.get(names.indexOf("deep.png"));
+        assertEquals(nested, deepFile.getFolder());
+        assertEquals(3, deepFile.getSize());
+        assertEquals(1_000_000L, deepFile.getLastModified());
+    }
+
+    @Test
+    public void scanFolder_notADirectory_returnsEmpty() throws IOException
+    {
+        File file = File.createTempFile("scan", ".png");
+        file.deleteOnExit();
+
+        assertTrue(FileUtils.scanFolder(file, f -> true, ForkJoinPool.commonPool()).isEmpty());
+    }
+
+    private static void writeFrames(File file, int frameCount) throws IOException
+    {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(file))
+        {
+            writer.setOutput(output);
+            writer.prepareWriteSequence(null);
+            for (int i = 0; i < frameCount; i++)
+            {
+                BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_BYTE_INDEXED);
+                writer.writeToSequence(new IIOImage(image, null, null), null);
+            }
+            writer.endWriteSequence();
+        }
+        finally
+        {
+            writer.dispose();
+        }
+    }
+}
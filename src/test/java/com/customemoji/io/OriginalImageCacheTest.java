@@ -0,0 +1,55 @@
+package com.customemoji.io;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import org.junit.Test;
+
+public class OriginalImageCacheTest
+{
+    private static final long TEN_BY_TEN_BYTES = 10 * 10 * Integer.BYTES;
+
+    @Test
+    public void get_changedLastModified_returnsNull()
+    {
+        OriginalImageCache cache = new OriginalImageCache(TEN_BY_TEN_BYTES);
+        File file = new File("pepe.png");
+        cache.put(file, new OriginalImageCache.Original(1L, false, new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB), null));
+
+        assertNotNull(cache.get(file, 1L));
+        assertNull(cache.get(file, 2L));
+    }
+
+    @Test
+    public void put_overBudget_keepsEarlierEntries()
+    {
+        OriginalImageCache cache = new OriginalImageCache(2 * TEN_BY_TEN_BYTES);
+        File first = new File("first.png");
+        File second = new File("second.png");
+        File third = new File("third.png");
+        cache.put(first, new OriginalImageCache.Original(1L, false, new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB), null));
+        cache.put(second, new OriginalImageCache.Original(1L, false, new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB), null));
+        cache.put(third, new OriginalImageCache.Original(1L, false, new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB), null));
+
+        assertNotNull(cache.get(first, 1L));
+        assertNotNull(cache.get(second, 1L));
+        assertNull(cache.get(third, 1L));
+    }
+
+    @Test
+    public void remove_freesBudgetForNewEntries()
+    {
+        OriginalImageCache cache = new OriginalImageCache(TEN_BY_TEN_BYTES);
+        File first = new File("first.png");
+        File second = new File("second.png");
+        cache.put(first, new OriginalImageCache.Original(1L, false, new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB), null));
+        cache.remove(first);
+        cache.put(second, new OriginalImageCache.Original(1L, false, new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB), null));
+
+        assertNull(cache.get(first, 1L));
+        assertNotNull(cache.get(second, 1L));
+    }
+}
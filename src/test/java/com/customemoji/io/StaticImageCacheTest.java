@@ -0,0 +1,38 @@
+package com.customemoji.io;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+public class StaticImageCacheTest
+{
+    private static final long TEN_BY_TEN_BYTES = 10 * 10 * Integer.BYTES;
+
+    @Test
+    public void get_cachedImage_doesNotLoadAgain()
+    {
+        StaticImageCache cache = new StaticImageCache(TEN_BY_TEN_BYTES);
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Object key = new Object();
+
+        assertSame(image, cache.get(key, () -> image));
+        assertSame(image, cache.get(key, () -> null));
+    }
+
+    @Test
+    public void prime_overBudget_keepsShownImages()
+    {
+        StaticImageCache cache = new StaticImageCache(TEN_BY_TEN_BYTES);
+        Object shown = new Object();
+        Object primed = new Object();
+        cache.get(shown, () -> new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB));
+        cache.prime(primed, new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB));
+
+        assertNotNull(cache.get(shown, () -> null));
+        assertNull(cache.get(primed, () -> null));
+    }
+}